@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>Aliases of genes and proteins: every name (primary id, secondary id, synonym or a name from the mapping file)
+ * is mapped to the primary identifiers of the annotation it stands for. Names and identifiers are ids of a
+ * {@link SymbolTable} and the groups are stored in two int arrays: identifiers of name k are
+ * values[offsets[k]] ... values[offsets[k + 1] - 1], distinct and in ascending order.</p>
+ * <p>The alias is built once by an annotation reader ({@link Builder}) and is not modified afterwards, so it is
+ * shared by all threads. {@link #asMap()} gives the old map view of names to sets of identifiers.</p>
+ *
+ * @version %I% %G%
+ */
+public final class Alias {
+
+    private final SymbolTable symbols;
+
+    //start of identifiers of every symbol, length symbols.size() + 1
+    private final int[] offsets;
+
+    private final int[] values;
+
+    //number of symbols with at least one identifier
+    private final int numberOfNames;
+
+    private Alias(SymbolTable symbols, int[] offsets, int[] values, int numberOfNames) {
+        this.symbols = symbols;
+        this.offsets = offsets;
+        this.values = values;
+        this.numberOfNames = numberOfNames;
+    }
+
+    /**
+     * <p>Alias from arrays of an existing alias, e.g. read from a snapshot</p>
+     * @param symbols dictionary of names and identifiers
+     * @param offsets start of identifiers of every symbol, length symbols.size() + 1
+     * @param values identifiers, ascending and distinct for every name
+     * @return the alias; arrays are not copied
+     * @throws IllegalArgumentException if lengths of arrays do not match
+     */
+    static Alias of(SymbolTable symbols, int[] offsets, int[] values) {
+        if (offsets.length != symbols.size() + 1 || offsets[0] != 0 || offsets[symbols.size()] != values.length) {
+            throw new IllegalArgumentException("Offsets do not match symbols and identifiers");
+        }
+        int numberOfNames = 0;
+        for (int k = 0; k < symbols.size(); k++) {
+            if (offsets[k + 1] > offsets[k]) {
+                numberOfNames++;
+            }
+        }
+        return new Alias(symbols, offsets, values, numberOfNames);
+    }
+
+    /**
+     * @return dictionary of names and identifiers
+     */
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * @param name id of a name
+     * @return true if the name has identifiers
+     */
+    public boolean containsName(int name) {
+        return name >= 0 && name < offsets.length - 1 && offsets[name + 1] > offsets[name];
+    }
+
+    /**
+     * @param name id of a name
+     * @return number of identifiers of the name
+     */
+    public int getNumberOfIdentifiers(int name) {
+        return containsName(name) ? offsets[name + 1] - offsets[name] : 0;
+    }
+
+    /**
+     * @param name id of a name
+     * @param i index of identifier, 0 ... {@link #getNumberOfIdentifiers(int)} - 1
+     * @return id of the identifier
+     */
+    public int getIdentifier(int name, int i) {
+        return values[offsets[name] + i];
+    }
+
+    /**
+     * @param name id of a name
+     * @return ids of identifiers of the name in ascending order, null if the name has no identifiers
+     */
+    public int[] getIdentifiers(int name) {
+        return containsName(name) ? Arrays.copyOfRange(values, offsets[name], offsets[name + 1]) : null;
+    }
+
+    /**
+     * @param name name
+     * @return id of the name, -1 if the name has no identifiers
+     */
+    public int getNameId(String name) {
+        int id = symbols.getId(name);
+        return containsName(id) ? id : -1;
+    }
+
+    /**
+     * @param name name
+     * @return identifiers of the name, null if the name has no identifiers
+     */
+    public HashSet<String> getIdentifiers(String name) {
+        int id = getNameId(name);
+        if (id < 0) {
+            return null;
+        }
+        HashSet<String> identifiers = new HashSet<>();
+        for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+            identifiers.add(symbols.getSymbol(values[i]));
+        }
+        return identifiers;
+    }
+
+    /**
+     * @return number of names with identifiers
+     */
+    public int size() {
+        return numberOfNames;
+    }
+
+    /**
+     * @return read-only map of names to identifiers. Sets of identifiers are built on every request
+     */
+    public Map<String, HashSet<String>> asMap() {
+        return new AbstractMap<String, HashSet<String>>() {
+            @Override
+            public HashSet<String> get(Object key) {
+                return key instanceof String ? getIdentifiers((String) key) : null;
+            }
+
+            @Override
+            public boolean containsKey(Object key) {
+                return key instanceof String && getNameId((String) key) >= 0;
+            }
+
+            @Override
+            public int size() {
+                return numberOfNames;
+            }
+
+            @Override
+            public Set<Entry<String, HashSet<String>>> entrySet() {
+                return new AbstractSet<Entry<String, HashSet<String>>>() {
+                    @Override
+                    public Iterator<Entry<String, HashSet<String>>> iterator() {
+                        return new Iterator<Entry<String, HashSet<String>>>() {
+                            private int next = advance(0);
+
+                            private int advance(int from) {
+                                int name = from;
+                                while (name < offsets.length - 1 && !containsName(name)) {
+                                    name++;
+                                }
+                                return name;
+                            }
+
+                            @Override
+                            public boolean hasNext() {
+                                return next < offsets.length - 1;
+                            }
+
+                            @Override
+                            public Entry<String, HashSet<String>> next() {
+                                if (!hasNext()) {
+                                    throw new NoSuchElementException();
+                                }
+                                String name = symbols.getSymbol(next);
+                                next = advance(next + 1);
+                                return new SimpleImmutableEntry<>(name, getIdentifiers(name));
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return numberOfNames;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * <p>Collects (name, identifier) pairs while an annotation is parsed. Pairs may repeat.</p>
+     */
+    public static final class Builder {
+
+        private final SymbolTable symbols;
+
+        //name in the high and identifier in the low 32 bits
+        private long[] pairs = new long[1024];
+
+        private int size;
+
+        /**
+         * @param symbols dictionary used for names and identifiers
+         */
+        public Builder(SymbolTable symbols) {
+            this.symbols = symbols;
+        }
+
+        /**
+         * @param name name
+         * @param identifier identifier the name stands for
+         */
+        public void add(String name, String identifier) {
+            add(symbols.intern(name), symbols.intern(identifier));
+        }
+
+        /**
+         * @param name id of a name
+         * @param identifier id of an identifier
+         */
+        public void add(int name, int identifier) {
+            if (size == pairs.length) {
+                pairs = Arrays.copyOf(pairs, 2 * size);
+            }
+            pairs[size++] = ((long) name << 32) | identifier;
+        }
+
+        /**
+         * @param other alias built over another dictionary
+         * @param symbolMap ids in the dictionary of this builder of all symbols of the other dictionary
+         */
+        void addAll(Alias other, int[] symbolMap) {
+            for (int name = 0; name < symbolMap.length; name++) {
+                for (int i = other.offsets[name]; i < other.offsets[name + 1]; i++) {
+                    add(symbolMap[name], symbolMap[other.values[i]]);
+                }
+            }
+        }
+
+        /**
+         * @param names names that all stand for each other (one line of a mapping file)
+         */
+        public void addGroup(String[] names) {
+            int[] ids = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                ids[i] = symbols.intern(names[i]);
+            }
+            for (int name : ids) {
+                for (int identifier : ids) {
+                    add(name, identifier);
+                }
+            }
+        }
+
+        /**
+         * @return the alias. The builder must not be used afterwards
+         */
+        public Alias build() {
+            long[] sorted = Arrays.copyOf(pairs, size);
+            pairs = null;
+            Arrays.sort(sorted);
+            int[] offsets = new int[symbols.size() + 1];
+            int[] values = new int[sorted.length];
+            int count = 0;
+            int numberOfNames = 0;
+            int previousName = -1;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i > 0 && sorted[i] == sorted[i - 1]) {
+                    continue;
+                }
+                int name = (int) (sorted[i] >>> 32);
+                if (name != previousName) {
+                    numberOfNames++;
+                    previousName = name;
+                }
+                offsets[name + 1]++;
+                values[count++] = (int) sorted[i];
+            }
+            for (int k = 0; k < symbols.size(); k++) {
+                offsets[k + 1] += offsets[k];
+            }
+            return new Alias(symbols, offsets, Arrays.copyOf(values, count), numberOfNames);
+        }
+    }
+}
@@ -35,8 +35,10 @@ package bingo;
  **/
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ontology.Annotation;
+import ontology.AnnotationTable;
 import ontology.Ontology;
 import ontology.OntologyTerm;
 
@@ -67,6 +69,21 @@ import ontology.OntologyTerm;
  * <li><code>String setDefaultAnnotation()</code></li>
  * <li><code>String setDefaultOntology(Map)</code></li>
  * </ul></li>
+ * <li>{@link TermGeneIndex} is built after {@link #remap()} ({@link #getTermGeneIndex()})</li>
+ * <li>counts of reference sets are shared by all clusters ({@link #getReferenceStatistics(String)})</li>
+ * <li>aliases are kept as an int based {@link Alias} ({@link #getAliasTable()}); {@link #getAlias()} is a
+ * map view of it</li>
+ * <li>{@link #remap()} reads names and classifications from the frozen {@link AnnotationTable}</li>
+ * <li>method <code>void up(String, int, Annotation, Ontology, Ontology)</code> replaced by
+ * {@link #addAncestors(java.lang.String, int, ontology.Ontology)}, which reads the ancestor closure of the
+ * ontology</li>
+ * <li>{@link #checkOntology(ontology.Ontology)} finds all cycles and the topological order of terms in one
+ * linear pass instead of a search from every term (method <code>void up_go(int, int, Ontology)</code>
+ * removed)</li>
+ * <li>the remapped state can be read from and written to a snapshot ({@link #setSnapshotDirectory(String)})</li>
+ * <li>the OBO file is read once for both the namespace and the full ontology</li>
+ * <li>gzip compressed GAF files (<code>.gaf.gz</code>) are parsed without a decompressed copy</li>
+ * <li>uncompressed GAF files can be parsed by several threads ({@link #setParserThreads(int)})</li>
  * </ol>
  * ************************************************************* </p>
  */
@@ -91,7 +108,7 @@ public class AnnotationParser {
     private Annotation annotation;
     private Annotation parsedAnnotation;
     private Ontology ontology;
-    private Map<String, HashSet<String>> alias;
+    private Alias alias;
 
     /**
      * full ontology which is used for remapping the annotations to one of the
@@ -116,7 +133,30 @@ public class AnnotationParser {
      */
     private boolean consistency = false;
 
-    private Set<Integer> parentsSet;
+    /**
+     * table of ln(k!) sized to the number of annotated entities. It is built
+     * once per load and shared by all clusters
+     */
+    private LogFactorial logFactorial;
+    /**
+     * genes of every term of the remapped annotation. It is built once per
+     * load and shared by all clusters
+     */
+    private TermGeneIndex termGeneIndex;
+    /**
+     * counts of reference sets, computed once per reference set and shared by
+     * all clusters
+     */
+    private final Map<String, ReferenceStatistics> referenceStatistics = new ConcurrentHashMap<>();
+    /**
+     * directory of snapshots of the remapped annotation, null if snapshots are
+     * not used
+     */
+    private String snapshotDirectory;
+    /**
+     * number of threads parsing an uncompressed GAF file
+     */
+    private int parserThreads = 1;
    
     
     public AnnotationParser(Set<String> genes, Set<String> deleteCodes,
@@ -138,6 +178,10 @@ public class AnnotationParser {
      */
     public void calculate() throws IOException {
 
+        String snapshotKey = getSnapshotKey();
+        if (readSnapshot(snapshotKey)) {
+            return;
+        }
         // always perform full remap for .obo files, allows definition of
         // custom GOSlims
         String loadOntologyString = setOntology();
@@ -186,12 +230,91 @@ public class AnnotationParser {
                     }
                     if (status) {
                         remap();
+                        logFactorial = new LogFactorial(parsedAnnotation.count());
+                        termGeneIndex = new TermGeneIndex(parsedAnnotation, ontology, alias);
+                        writeSnapshot(snapshotKey);
                     }
                 }
             }
         }
     }
 
+    /**
+     * <p>Directory of snapshots of the remapped annotation ({@link AnnotationSnapshot}). If it is set
+     * {@link #calculate()} reads the snapshot of the files instead of parsing them, and writes it after parsing if
+     * there is no valid snapshot yet. Snapshots are not used if the annotation is restricted to genes.</p>
+     *
+     * @param snapshotDirectory directory of snapshots, null to always parse the files
+     */
+    public void setSnapshotDirectory(String snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    /**
+     * <p>Number of threads parsing an uncompressed GAF file. The parsed annotation does not depend on it.</p>
+     *
+     * @param parserThreads number of threads, 1 to parse on the calling thread
+     */
+    public void setParserThreads(int parserThreads) {
+        this.parserThreads = Math.max(1, parserThreads);
+    }
+
+    //key of the snapshot of the files, null if snapshots are not used
+    private String getSnapshotKey() {
+        if (snapshotDirectory == null || !genes.isEmpty()) {
+            return null;
+        }
+        try {
+            return AnnotationSnapshot.key(ontologyFile, annotationFile, mappingFile, namespace, deleteCodes);
+        } catch (IOException e) {
+            System.out.println("Snapshot is not used: " + e.getMessage());
+            return null;
+        }
+    }
+
+    //restores the remapped state from the snapshot; false if there is no snapshot with the key
+    private boolean readSnapshot(String key) {
+        if (key == null) {
+            return false;
+        }
+        AnnotationSnapshot snapshot;
+        try {
+            snapshot = AnnotationSnapshot.read(
+                    AnnotationSnapshot.getFile(snapshotDirectory, annotationFile, namespace), key);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+            return false;
+        }
+        if (snapshot == null) {
+            return false;
+        }
+        ontology = snapshot.getOntology();
+        ontologyType = snapshot.getOntologyType();
+        parsedAnnotation = snapshot.getAnnotation();
+        alias = snapshot.getAlias();
+        synonymHash = snapshot.getSynonymHash();
+        orphansFound = snapshot.getOrphans();
+        consistency = snapshot.getConsistency();
+        status = true;
+        logFactorial = new LogFactorial(parsedAnnotation.count());
+        termGeneIndex = new TermGeneIndex(parsedAnnotation, ontology, alias);
+        System.out.println("Annotation read from snapshot "
+                + AnnotationSnapshot.getFile(snapshotDirectory, annotationFile, namespace));
+        return true;
+    }
+
+    private void writeSnapshot(String key) {
+        if (key == null) {
+            return;
+        }
+        try {
+            new AnnotationSnapshot(ontology, ontologyType, parsedAnnotation, alias, synonymHash, orphansFound,
+                    consistency).write(AnnotationSnapshot.getFile(snapshotDirectory, annotationFile, namespace), key);
+        } catch (IOException e) {
+            System.out.println("Snapshot could not be written: " + e.getMessage());
+        }
+    }
+
     /**
      * Method that parses the custom annotation file into an annotation-object
      * and returns a string containing whether the operation is correct or not.
@@ -211,10 +334,10 @@ public class AnnotationParser {
 
             if (fileString.contains("gene_association")
                     || fileString.contains("phenotype_annotation")
-                    || fileString.endsWith(".gaf")) {
+                    || fileString.endsWith(".gaf") || fileString.endsWith(".gaf.gz")) {
 
                 readerAnnotation = new BiNGOConsortiumAnnotationReader(fileString, mappingFile,
-                        synonymHash, deleteCodes, "Consortium", "GO");//params.getDeleteCodes()
+                        synonymHash, deleteCodes, "Consortium", "GO", parserThreads);//params.getDeleteCodes()
             } else {
                 readerAnnotation = new BiNGOAnnotationFlatFileReader(fileString, mappingFile, synonymHash);
             }
@@ -225,7 +348,7 @@ public class AnnotationParser {
             if (readerAnnotation.getConsistency()) {
                 consistency = true;
             }
-            alias = readerAnnotation.getAlias();
+            alias = readerAnnotation.getAliasTable();
             
             resultString = LOADCORRECT;
         } catch (IllegalArgumentException e) {
@@ -256,15 +379,11 @@ public class AnnotationParser {
         try {
             this.synonymHash = null;
             if (fileString.endsWith(".obo")) {
-                readerOntology = new BiNGOOntologyOboReader(fileString, namespace);
-                if (!namespace.equals(Constants.NONE.getConstant())) {
-                    BiNGOOntologyOboReader full = new BiNGOOntologyOboReader(fileString, Constants.NONE.getConstant());
-                    fullOntology = full.getOntology();
-                    this.synonymHash = full.getSynonymHash();
-                } else {
-                    fullOntology = readerOntology.getOntology();
-                    this.synonymHash = readerOntology.getSynonymHash();
-                }
+                // one pass over the file gives the full ontology and the namespace view
+                BiNGOOntologyOboReader oboReader = new BiNGOOntologyOboReader(fileString, namespace);
+                readerOntology = oboReader;
+                fullOntology = oboReader.getFullOntology();
+                this.synonymHash = oboReader.getFullSynonymHash();
 
                 ontology = readerOntology.getOntology();
 
@@ -293,14 +412,35 @@ public class AnnotationParser {
         return resultString;
     }
 
-    private void checkOntology(Ontology ontology) throws IOException {
-        HashMap<Integer, OntologyTerm> ontMap = ontology.getTerms();
-        Iterator<Integer> it = ontMap.keySet().iterator();
-        while (it.hasNext()) {
-            parentsSet = new HashSet<>();
-            int childNode = Integer.parseInt(it.next().toString());
-            up_go(childNode, childNode, ontology);
+    /**
+     * checks the ontology for cycles in one linear pass. The topological order
+     * found by the check is kept by the ontology and reused to propagate
+     * annotations ({@link Ontology#getAncestors(int)})
+     *
+     * @return ids of terms, parents before children
+     * @throws IOException if the ontology contains cycles; all cycles are
+     * reported
+     */
+    private int[] checkOntology(Ontology ontology) throws IOException {
+        int[][] cycles = ontology.getCycles();
+        if (cycles.length != 0) {
+            status = false;
+            StringBuilder message = new StringBuilder("Your ontology file contains ")
+                    .append(cycles.length).append(cycles.length == 1 ? " cycle" : " cycles")
+                    .append(" at ID ").append(cycles[0][0]);
+            for (int[] cycle : cycles) {
+                message.append("\n    cycle of terms ").append(Arrays.toString(cycle));
+            }
+            throw new IOException(message.toString());
+        }
+        for (OntologyTerm term : ontology.getTerms().values()) {
+            for (int parent : term.getParentsAndContainers()) {
+                if (ontology.getTerm(parent) == null) {
+                    System.out.println("term not in ontology: " + parent);
+                }
+            }
         }
+        return ontology.getTopologicalOrder();
     }
 
     /**
@@ -315,23 +455,24 @@ public class AnnotationParser {
     private void remap() {
         parsedAnnotation = new Annotation(annotation.getSpecies(), annotation.getType(),
                 annotation.getCurator());
-        HashMap<String, ArrayList<Integer>> annMap = annotation.getMap();
-        Iterator it = annMap.keySet().iterator();
+        AnnotationTable table = annotation.getTable();
 
-        HashSet<String> ids = new HashSet<>();
+        SymbolTable symbols = alias.getSymbols();
+        BitSet ids = new BitSet(symbols.size());
         for (String gene : genes) {
-            if (alias.get(gene) != null) {
-                ids.addAll(alias.get(gene));
+            int name = alias.getNameId(gene);
+            for (int i = 0; i < alias.getNumberOfIdentifiers(name); i++) {
+                ids.set(alias.getIdentifier(name, i));
             }
         }
-        while (it.hasNext()) {
+        for (int index = 0; index < table.count(); index++) {
 
-            parentsSet = new HashSet<>();
-            String node = it.next() + "";
-            if (genes.isEmpty() || ids.contains(node)) {
+            String node = table.getName(index);
+            int symbol = symbols.getId(node);
+            if (genes.isEmpty() || (symbol >= 0 && ids.get(symbol))) {
                 // array with go labels for gene it.next().
                 int[] goID;
-                goID = annotation.getClassifications(node);
+                goID = table.getClassifications(node);
                 for (int t = 0; t < goID.length; t++) {
                     if (ontology.getTerm(goID[t]) != null) {
                         parsedAnnotation.add(node, goID[t]);
@@ -341,13 +482,13 @@ public class AnnotationParser {
                     // CHECK IF goID EXISTS IN fullOntology...
                     if (ontologyFile.endsWith(".obo")) {//params.getOntologyFile()
                         if (fullOntology.getTerm(goID[t]) != null) {
-                            up(node, goID[t], parsedAnnotation, ontology, fullOntology);
+                            addAncestors(node, goID[t], fullOntology);
                         } else {
                             System.out.println("Orphan found " + goID[t]);
                             orphansFound = true;
                         }
                     } else {
-                        up(node, goID[t], parsedAnnotation, ontology, ontology);
+                        addAncestors(node, goID[t], ontology);
                     }
                 }
             }
@@ -357,43 +498,13 @@ public class AnnotationParser {
     }
 
     /**
-     * method for recursing through tree to root
+     * adds all ancestors of a term that are in the ontology to the node, using
+     * the precomputed closure of flOntology ({@link Ontology#getAncestors(int)})
      */
-    private void up(String node, int id, Annotation parsedAnnotation,
-            Ontology ontology, Ontology flOntology) {
-        OntologyTerm child = flOntology.getTerm(id);
-        int[] parents = child.getParentsAndContainers();
-        for (int t = 0; t < parents.length; t++) {
-            if (!parentsSet.contains(parents[t])) {
-                parentsSet.add(parents[t]);
-                if (ontology.getTerm(parents[t]) != null) {
-                    parsedAnnotation.add(node, parents[t]);
-                }
-                up(node, parents[t], parsedAnnotation, ontology, flOntology);
-                
-            }
-        }
-    }
-
-    /**
-     * method for recursing through tree to root and detecting cycles
-     *
-     * @throws IOException
-     */
-    private void up_go(int startID, int id, Ontology ontology) throws IOException {
-        OntologyTerm child = ontology.getTerm(id);
-        int[] parents = child.getParentsAndContainers();
-        for (int t = 0; t < parents.length; t++) {
-            if (parents[t] == startID) {
-                status = false;
-                throw new IOException("Your ontology file contains a cycle at ID " + startID);
-            } else if (!parentsSet.contains(parents[t])) {
-                if (ontology.getTerm(parents[t]) != null) {
-                    parentsSet.add(parents[t]);
-                    up_go(startID, parents[t], ontology);
-                } else {
-                    System.out.println("term not in ontology: " + parents[t]);
-                }
+    private void addAncestors(String node, int id, Ontology flOntology) {
+        for (int parent : flOntology.getAncestors(id)) {
+            if (ontology.getTerm(parent) != null) {
+                parsedAnnotation.add(node, parent);
             }
         }
     }
@@ -413,9 +524,43 @@ public class AnnotationParser {
     }
 
     public Map<String, HashSet<String>> getAlias() {
+        return alias.asMap();
+    }
+
+    /**
+     * @return gene name -> identifiers of the annotation as symbol ids
+     */
+    public Alias getAliasTable() {
         return alias;
     }
 
+    /**
+     * @return table of ln(k!) for k up to the number of annotated entities
+     */
+    public LogFactorial getLogFactorial() {
+        return logFactorial;
+    }
+
+    /**
+     * @return genes of every term of the remapped annotation
+     */
+    public TermGeneIndex getTermGeneIndex() {
+        return termGeneIndex;
+    }
+
+    /**
+     * @param referenceSet {@link Constants#GENOME} for the whole annotation or
+     * file with the reference set
+     * @return counts of the reference set, computed on first request
+     */
+    public ReferenceStatistics getReferenceStatistics(String referenceSet) {
+        return referenceStatistics.computeIfAbsent(referenceSet, set -> new ReferenceStatistics(
+                set.equals(Constants.GENOME.getConstant())
+                ? ReferenceStatistics.genomeNames(parsedAnnotation.getNames())
+                : ReferenceStatistics.customNames(ReferenceStatistics.readReferenceSet(set)),
+                termGeneIndex));
+    }
+
     public String getOntologyType() {
         return ontologyType;
     }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import ontology.Annotation;
+import ontology.AnnotationTable;
+import ontology.Ontology;
+import ontology.OntologyTerm;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Binary snapshot of the state of {@link AnnotationParser} after the annotation is remapped: the ontology of
+ * the namespace, the remapped annotation, the alias, the synonyms of ontology terms and the orphan and consistency
+ * flags. Reading a snapshot replaces parsing and validating the ontology and the annotation, so a run starts
+ * testing terms right away.</p>
+ * <p>A snapshot is keyed on the format version, the checksums (CRC32) and sizes of the ontology, annotation and
+ * mapping files, the namespace and the discarded evidence codes. The key is stored in the snapshot; a snapshot whose
+ * key differs from the key of the current run is ignored and rewritten. Snapshots are written to a temporary file
+ * and moved into place, and they are read through a memory mapped buffer.</p>
+ *
+ * @version %I% %G%
+ */
+public final class AnnotationSnapshot {
+
+    private static final int MAGIC = 0x444E4753;
+
+    /**
+     * format version; change it whenever the layout of the snapshot changes
+     */
+    private static final int VERSION = 1;
+
+    private static final String SUFFIX = ".snapshot";
+
+    private final Ontology ontology;
+    private final String ontologyType;
+    private final Annotation annotation;
+    private final Alias alias;
+    private final Map<Integer, Integer> synonymHash;
+    private final boolean orphansFound;
+    private final boolean consistency;
+
+    /**
+     * @param ontology ontology of the namespace
+     * @param ontologyType type of the ontology
+     * @param annotation remapped annotation
+     * @param alias alias of the annotation
+     * @param synonymHash synonymous term ids -> term id
+     * @param orphansFound true if the annotation contains terms that are not in the ontology
+     * @param consistency true if some terms of the annotation are in the ontology
+     */
+    public AnnotationSnapshot(Ontology ontology, String ontologyType, Annotation annotation, Alias alias,
+            Map<Integer, Integer> synonymHash, boolean orphansFound, boolean consistency) {
+        this.ontology = ontology;
+        this.ontologyType = ontologyType;
+        this.annotation = annotation;
+        this.alias = alias;
+        this.synonymHash = synonymHash;
+        this.orphansFound = orphansFound;
+        this.consistency = consistency;
+    }
+
+    /**
+     * @param directory directory of snapshots
+     * @param annotationFile annotation file
+     * @param namespace namespace of the ontology
+     * @return file of the snapshot of the annotation and namespace
+     */
+    public static Path getFile(String directory, String annotationFile, String namespace) {
+        String name = Paths.get(annotationFile).getFileName().toString();
+        return Paths.get(directory, name + "_" + namespace.replaceAll("[^A-Za-z0-9_]", "_") + SUFFIX);
+    }
+
+    /**
+     * @param ontologyFile ontology file
+     * @param annotationFile annotation file
+     * @param mappingFile mapping file or null
+     * @param namespace namespace of the ontology
+     * @param deleteCodes discarded evidence codes
+     * @return key of the snapshot of the files, namespace and codes
+     * @throws IOException if a file can't be read
+     */
+    public static String key(String ontologyFile, String annotationFile, String mappingFile, String namespace,
+            Iterable<String> deleteCodes) throws IOException {
+        TreeSet<String> codes = new TreeSet<>();
+        for (String code : deleteCodes) {
+            codes.add(code);
+        }
+        return "version=" + VERSION
+                + ";ontology=" + checksum(ontologyFile) + (ontologyFile.endsWith(".obo") ? ":obo" : ":flat")
+                + ";annotation=" + checksum(annotationFile)
+                + ";mapping=" + (mappingFile == null ? "-" : checksum(mappingFile))
+                + ";namespace=" + namespace
+                + ";codes=" + String.join(",", codes);
+    }
+
+    //size and CRC32 of the file
+    private static String checksum(String file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(Paths.get(file), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += Integer.MAX_VALUE) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(Integer.MAX_VALUE, size - position)));
+            }
+            return size + ":" + Long.toHexString(crc.getValue());
+        }
+    }
+
+    /**
+     * @param file snapshot file
+     * @param key key of the current run ({@link #key(String, String, String, String, Iterable)})
+     * @return the snapshot, null if there is no snapshot with the key
+     * @throws IOException if the snapshot can't be read or is damaged
+     */
+    public static AnnotationSnapshot read(Path file, String key) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || !key.equals(readString(buffer))) {
+                //snapshot of other files or of an older format
+
+                return null;
+            }
+            String ontologyType = readString(buffer);
+            Ontology ontology = new Ontology(readString(buffer), readString(buffer));
+            int numberOfTerms = buffer.getInt();
+            for (int i = 0; i < numberOfTerms; i++) {
+                OntologyTerm term = new OntologyTerm(readString(buffer), buffer.getInt());
+                for (int parent : readInts(buffer)) {
+                    term.addParent(parent);
+                }
+                for (int container : readInts(buffer)) {
+                    term.addContainer(container);
+                }
+                ontology.add(term);
+            }
+            String species = readString(buffer);
+            String type = readString(buffer);
+            String curator = readString(buffer);
+            String[] names = new String[buffer.getInt()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = readString(buffer);
+            }
+            Annotation annotation = new Annotation(species, type, curator,
+                    AnnotationTable.of(names, readInts(buffer), readInts(buffer)));
+            SymbolTable symbols = new SymbolTable();
+            int numberOfSymbols = buffer.getInt();
+            for (int i = 0; i < numberOfSymbols; i++) {
+                symbols.intern(readString(buffer));
+            }
+            Alias alias = Alias.of(symbols, readInts(buffer), readInts(buffer));
+            int[] synonyms = readInts(buffer);
+            Map<Integer, Integer> synonymHash = new HashMap<>(synonyms.length);
+            for (int i = 0; i < synonyms.length; i += 2) {
+                synonymHash.put(synonyms[i], synonyms[i + 1]);
+            }
+            boolean orphansFound = buffer.get() != 0;
+            boolean consistency = buffer.get() != 0;
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Snapshot " + file + " is damaged");
+            }
+            return new AnnotationSnapshot(ontology, ontologyType, annotation, alias, synonymHash, orphansFound,
+                    consistency);
+        } catch (RuntimeException e) {
+            //truncated buffer or inconsistent arrays
+            throw new IOException("Snapshot " + file + " is damaged: " + e, e);
+        }
+    }
+
+    /**
+     * <p>Writes the snapshot to a temporary file in the same directory and moves it over file</p>
+     * @param file snapshot file
+     * @param key key of the current run
+     * @throws IOException if the snapshot can't be written
+     */
+    public void write(Path file, String key) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(temporary);
+                    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                writeString(output, key);
+                writeString(output, ontologyType);
+                writeString(output, ontology.getCurator());
+                writeString(output, ontology.getType());
+                output.writeInt(ontology.size());
+                for (int index = 0; index < ontology.size(); index++) {
+                    int id = ontology.getTermId(index);
+                    OntologyTerm term = ontology.getTerm(id);
+                    writeString(output, term.getName());
+                    output.writeInt(id);
+                    writeInts(output, term.getParents());
+                    writeInts(output, term.getContainers());
+                }
+                writeString(output, annotation.getSpecies());
+                writeString(output, annotation.getType());
+                writeString(output, annotation.getCurator());
+                AnnotationTable table = annotation.getTable();
+                output.writeInt(table.count());
+                int[] offsets = new int[table.count() + 1];
+                for (int index = 0; index < table.count(); index++) {
+                    writeString(output, table.getName(index));
+                    offsets[index + 1] = offsets[index] + table.getNumberOfClassifications(index);
+                }
+                writeInts(output, offsets);
+                writeInts(output, table.getClassifications());
+                SymbolTable symbols = alias.getSymbols();
+                output.writeInt(symbols.size());
+                for (int id = 0; id < symbols.size(); id++) {
+                    writeString(output, symbols.getSymbol(id));
+                }
+                int[] aliasOffsets = new int[symbols.size() + 1];
+                for (int name = 0; name < symbols.size(); name++) {
+                    aliasOffsets[name + 1] = aliasOffsets[name] + alias.getNumberOfIdentifiers(name);
+                }
+                writeInts(output, aliasOffsets);
+                output.writeInt(aliasOffsets[symbols.size()]);
+                for (int name = 0; name < symbols.size(); name++) {
+                    for (int i = 0; i < alias.getNumberOfIdentifiers(name); i++) {
+                        output.writeInt(alias.getIdentifier(name, i));
+                    }
+                }
+                int[] synonyms = new int[2 * synonymHash.size()];
+                int n = 0;
+                for (Map.Entry<Integer, Integer> synonym : synonymHash.entrySet()) {
+                    synonyms[n++] = synonym.getKey();
+                    synonyms[n++] = synonym.getValue();
+                }
+                writeInts(output, synonyms);
+                output.writeByte(orphansFound ? 1 : 0);
+                output.writeByte(consistency ? 1 : 0);
+                output.writeInt(MAGIC);
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    //strings are written as length and UTF-8 bytes, null as length -1
+    private static void writeString(DataOutputStream output, String s) throws IOException {
+        if (s == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+        output.writeInt(values.length);
+        for (int value : values) {
+            output.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer) {
+        int[] values = new int[buffer.getInt()];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + 4 * values.length);
+        return values;
+    }
+
+    public Ontology getOntology() {
+        return ontology;
+    }
+
+    public String getOntologyType() {
+        return ontologyType;
+    }
+
+    public Annotation getAnnotation() {
+        return annotation;
+    }
+
+    public Alias getAlias() {
+        return alias;
+    }
+
+    public Map<Integer, Integer> getSynonymHash() {
+        return synonymHash;
+    }
+
+    public boolean getOrphans() {
+        return orphansFound;
+    }
+
+    public boolean getConsistency() {
+        return consistency;
+    }
+}
@@ -24,8 +24,6 @@ package bingo;
  * Mar.25.2005 * Description: Class implementing the Benjamini and Hochberg FDR
  * correction algorithm.
  */
-import java.math.BigDecimal;
-import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -51,6 +49,13 @@ import java.util.Map;
  * <li>new constructor {@link #BenjaminiHochbergFDR(java.util.Map) }</li>
  * <li>inner classes <code>HashEntry</code> and <code>HashComprator</code> were
  * removed</li>
+ * <li>new constructor {@link #BenjaminiHochbergFDR(int[], double[])}. Adjusted
+ * p-values are stored as doubles, the map of corrected p-values is built by
+ * {@link CalculateCorrectionTask#getCorrectionMap()} on request</li>
+ * <li>correction is calculated in {@link #adjust(double[], int[])} with
+ * primitive doubles instead of BigDecimal at scale 100. Variable
+ * <code>adjustedPvalues</code> and constant <code>RESULT_SCALE</code> were
+ * removed</li>
  * </ol>
  * </p>
  * <p>
@@ -59,22 +64,6 @@ import java.util.Map;
  */
 public class BenjaminiHochbergFDR extends CalculateCorrectionTask {
 
-    /**
-     * the adjusted p-values ordered in ascending order.
-     */
-    private String[] adjustedPvalues;
-
-    /**
-     * hashmap with the results (adjusted p-values) as values and the GO labels
-     * as keys.
-     */
-    private HashMap<String, String> correctionMap;
-
-    /**
-     * scale for the division in de method 'runFDR'.
-     */
-    private static final int RESULT_SCALE = 100;
-
     /**
      * Constructor.
      *
@@ -85,7 +74,17 @@ public class BenjaminiHochbergFDR extends CalculateCorrectionTask {
     public BenjaminiHochbergFDR(Map golabelstopvalues) {
 
         super(golabelstopvalues);
-        this.adjustedPvalues = new String[numberOfTests];
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param termIds ids of tested terms
+     * @param pValues p values of tested terms
+     */
+    public BenjaminiHochbergFDR(int[] termIds, double[] pValues) {
+
+        super(termIds, pValues);
     }
 
     /*--------------------------------------------------------------
@@ -101,49 +100,42 @@ public class BenjaminiHochbergFDR extends CalculateCorrectionTask {
      * <p>
      * adjusted p-value for i-th ranked p-value p_i^adj =
      * min(k=i..numberOfTests)[min(1,numberOfTests/k p_k)]</p>
+     *
+     * @param pValues raw p values
+     * @param order indices of pValues in ascending order
+     * @return adjusted p values in the same order as pValues
      */
     @Override
-    public void calculate() {
-        String[] ordenedPvalues = super.getOrdenedPvalues();
-        String[] ordenedGOLabels = super.getOrdenedGOLabels();
+    public double[] adjust(double[] pValues, int[] order) {
+        int m = pValues.length;
+        double[] adjusted = new double[m];
         // calculating adjusted p-values.
-        BigDecimal min = new BigDecimal("" + 1);
-        BigDecimal mkprk;
-        for (int i = numberOfTests; i > 0; i--) {
-            mkprk = (new BigDecimal("" + numberOfTests).multiply(new BigDecimal
-        (ordenedPvalues[i - 1]))).divide(new BigDecimal(""
-                    + i), RESULT_SCALE, BigDecimal.ROUND_HALF_UP);
-            if (mkprk.compareTo(min) < 0) {
+        double min = 1;
+        for (int i = m; i > 0; i--) {
+            double mkprk = m * pValues[order[i - 1]] / i;
+            if (mkprk < min) {
                 min = mkprk;
             }
-            adjustedPvalues[i - 1] = min.toString();
-
-        }
-        correctionMap = new HashMap<>();
-        for (int i = 0; i < adjustedPvalues.length && i < ordenedGOLabels.length; i++) {
-            correctionMap.put(ordenedGOLabels[i], adjustedPvalues[i]);
+            adjusted[order[i - 1]] = min;
         }
+        return adjusted;
     }
 
     /*--------------------------------------------------------------
 	  GETTERS.
 	--------------------------------------------------------------*/
-    /**
-     * getter for the map of corrected p-values.
-     *
-     * @return HashMap correctionMap.
-     */
-    @Override
-    public HashMap<String, String> getCorrectionMap() {
-        return correctionMap;
-    }
-
     /**
      * getter for the adjusted p-values.
      *
-     * @return String[] with the adjusted p-values.
+     * @return adjusted p-values ordered in ascending order.
      */
-    public String[] getAdjustedPvalues() {
+    public double[] getAdjustedPvalues() {
+        double[] corrected = getCorrectedPValues();
+        int[] order = getOrder();
+        double[] adjustedPvalues = new double[numberOfTests];
+        for (int i = 0; i < numberOfTests; i++) {
+            adjustedPvalues[i] = corrected[order[i]];
+        }
         return adjustedPvalues;
     }
 
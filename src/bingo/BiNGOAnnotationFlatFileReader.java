@@ -40,14 +40,13 @@ package bingo;
  * * made in the bingoOntologyFlatFileReader class
  * * Modified by Radoslav Davidović
  * * Changes: new constructor, new method void retrieveAlias(String)
+ * * identifiers are interned in a SymbolTable and aliases are collected into an Alias
  * */
 import ontology.Annotation;
 
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 
@@ -59,7 +58,9 @@ public class BiNGOAnnotationFlatFileReader implements IAnnotation {
     private String curator;
     private String filename;
     private Map<Integer, Integer> synonymHash;
-    private Map<String, HashSet<String>> alias;
+    private final SymbolTable symbols = new SymbolTable();
+    private Alias.Builder aliasBuilder;
+    private Alias alias;
 
     /**
      * true if there are categories in the annotation which are not defined in
@@ -86,6 +87,8 @@ public class BiNGOAnnotationFlatFileReader implements IAnnotation {
         parse();
         if(mappingFile != null)
             retrieveAlias(mappingFile);
+        alias = aliasBuilder.build();
+        aliasBuilder = null;
         /*
         for (Map.Entry<String, HashSet<String>> entry : alias.entrySet()) {
             String key = entry.getKey();
@@ -144,7 +147,7 @@ public class BiNGOAnnotationFlatFileReader implements IAnnotation {
         //System.out.println("Parsing annotation...");
 
         HashSet<Integer> orphans = new HashSet<>();
-        alias = new HashMap<>();
+        aliasBuilder = new Alias.Builder(symbols);
         try(BufferedReader reader = new BufferedReader(new FileReader(filename))){
             String line;
             String[] tokens;
@@ -162,11 +165,9 @@ public class BiNGOAnnotationFlatFileReader implements IAnnotation {
                     Integer mainId = synonymHash.get(id);
                     if (mainId != null) {
                         if ((entityName.length() != 0) && (id != -1)) {
-                            annotation.add(entityName, mainId);
-                            
-                            HashSet<String> tmp = new HashSet<>();
-                            tmp.add(entityName);
-                            alias.put(entityName, tmp);
+                            int entity = symbols.intern(entityName);
+                            annotation.add(symbols.getSymbol(entity), mainId);
+                            aliasBuilder.add(entity, entity);
                             
                         }
                         consistency = true;
@@ -191,17 +192,7 @@ public class BiNGOAnnotationFlatFileReader implements IAnnotation {
             String[] fields;
             while((line = reader.readLine()) != null){
                 fields = line.trim().split("\\t");
-                for(String f:fields){
-                    if(alias.containsKey(f)){
-                        HashSet<String> temp = alias.get(f);
-                        temp.addAll(Arrays.asList(fields));
-                        alias.put(f, temp);
-                        
-                    } else{
-                        alias.put(f, new HashSet<>(Arrays.asList(fields)));
-                    }
-                    
-                }
+                aliasBuilder.addGroup(fields);
                 
             }
         } catch(IOException ex){
@@ -215,7 +206,7 @@ public class BiNGOAnnotationFlatFileReader implements IAnnotation {
     }
 
     @Override
-    public Map<String, HashSet<String>> getAlias() {
+    public Alias getAliasTable() {
         return alias;
     }
 
@@ -32,15 +32,28 @@ package bingo;
  **/
 
 import ontology.Annotation;
+import ontology.AnnotationTable;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Description: Class that parses default annotation files in function of the chosen organism.
@@ -64,6 +77,15 @@ import java.util.Set;
  *      </ol>
  *  </li>
  * <li>new method {@link #retrieveAlias(java.lang.String) }</li>
+ * <li>identifiers are interned in a {@link SymbolTable} and aliases are collected into an {@link Alias}</li>
+ * <li>gzip compressed annotation files (<code>.gz</code>) are read directly through {@link GzipPipeInputStream}</li>
+ * <li>uncompressed files can be parsed by several threads ({@link #BiNGOConsortiumAnnotationReader(java.lang.String,
+ * java.lang.String, java.util.Map, java.util.Set, java.lang.String, java.lang.String, int)}). The file is split into
+ * ranges that end with a line break; every range is parsed into its own {@link Shard} and the shards are merged in
+ * the order of the file, so the result does not depend on the number of threads</li>
+ * <li>lines are tokenized as bytes ({@link GafTokenizer}): columns are found in one pass, evidence codes are
+ * compared as bytes, GO ids are parsed to ints and identifiers are interned without intermediate strings. Lines
+ * with other than ASCII characters are parsed as strings</li>
  * </ol>
  */
 public class BiNGOConsortiumAnnotationReader implements IAnnotation {
@@ -85,9 +107,38 @@ public class BiNGOConsortiumAnnotationReader implements IAnnotation {
     private String filename;
 
     private Map<Integer, Integer> synonymHash;
-    private HashMap<String, HashSet<String>> alias;
+    private final SymbolTable symbols = new SymbolTable();
+    private Alias.Builder aliasBuilder;
+    private Alias alias;
 
     private Set<String> deleteCodes;
+    /**
+     * ASCII evidence codes of {@link #deleteCodes}; other codes never match an ASCII line
+     */
+    private byte[][] deleteCodeBytes;
+    /**
+     * ids of {@link #synonymHash} in ascending order and the terms they stand for, looked up without boxing
+     */
+    private int[] synonymIds;
+    private int[] synonymTerms;
+
+    /**
+     * number of threads parsing an uncompressed file
+     */
+    private int threads;
+
+    /**
+     * largest range of the file parsed by one task; ranges are memory mapped
+     */
+    private static final long MAX_RANGE = 1L << 28;
+    /**
+     * smallest range of the file worth a task of its own
+     */
+    private static final long MIN_RANGE = 1L << 20;
+    /**
+     * initial size of blocks of a stream handed to the tokenizer
+     */
+    private static final int BLOCK_SIZE = 1 << 20;
 
     /**
      * true if there are categories in the annotation which are not defined in
@@ -103,6 +154,21 @@ public class BiNGOConsortiumAnnotationReader implements IAnnotation {
     public BiNGOConsortiumAnnotationReader(String filename, String mappingFile, 
             Map<Integer, Integer> synonymHash, Set<String> deleteCodes,
                                            String annotationType, String curator) {
+        this(filename, mappingFile, synonymHash, deleteCodes, annotationType, curator, 1);
+    }
+
+    /**
+     * @param filename annotation file
+     * @param mappingFile file with aliases, may be null
+     * @param synonymHash synonyms of ontology terms
+     * @param deleteCodes evidence codes of discarded annotations
+     * @param annotationType type for Annotation constructor
+     * @param curator curator for Annotation constructor
+     * @param threads number of threads parsing an uncompressed file
+     */
+    public BiNGOConsortiumAnnotationReader(String filename, String mappingFile,
+            Map<Integer, Integer> synonymHash, Set<String> deleteCodes,
+                                           String annotationType, String curator, int threads) {
        
         this.filename = filename;
         this.species = filename;
@@ -110,16 +176,20 @@ public class BiNGOConsortiumAnnotationReader implements IAnnotation {
         this.curator = curator;
         this.synonymHash = synonymHash;
         this.deleteCodes = deleteCodes;
+        this.threads = threads;
+        initializeLookups();
 
         parse();
         if(mappingFile != null){
             retrieveAlias(mappingFile);
         }
+        alias = aliasBuilder.build();
+        aliasBuilder = null;
         
 
     }
 
-    private int stringToInt(String s) {
+    private static int stringToInt(String s) {
         try {
             return Integer.parseInt(s);
         } catch (NumberFormatException nfe) {
@@ -127,61 +197,390 @@ public class BiNGOConsortiumAnnotationReader implements IAnnotation {
         }
     }
 
-    private void updateAlias(String valuef, String values){
-        if (alias.containsKey(valuef)) {
-            alias.get(valuef).add(values);
-        } else {
-            HashSet<String> tmp = new HashSet<>();
-            tmp.add(values);
-            alias.put(valuef, tmp);
+    private void initializeLookups() {
+        List<byte[]> codes = new ArrayList<>();
+        for (String code : deleteCodes) {
+            if (code.chars().allMatch(c -> c < 128)) {
+                codes.add(code.getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        deleteCodeBytes = codes.toArray(new byte[codes.size()][]);
+        synonymIds = new int[synonymHash.size()];
+        int k = 0;
+        for (Integer id : synonymHash.keySet()) {
+            synonymIds[k++] = id;
+        }
+        Arrays.sort(synonymIds);
+        synonymTerms = new int[synonymIds.length];
+        for (int i = 0; i < synonymIds.length; i++) {
+            synonymTerms[i] = synonymHash.get(synonymIds[i]);
         }
     }
 
     private void parse() {
         annotation = new Annotation(species, annotationType, curator);
-        alias = new HashMap<>();
-        HashSet<Integer> orphans = new HashSet<>();
-        try(BufferedReader reader = new BufferedReader(new FileReader(filename))){
-            String line;
-            String[] tokens;
+        aliasBuilder = new Alias.Builder(symbols);
+        if (threads > 1 && !filename.endsWith(".gz")) {
+            try {
+                if (parseInParallel()) {
+                    return;
+                }
+            } catch (IOException ex) {
+                System.out.println(ex.getMessage());
+                return;
+            }
+        }
+        Shard shard = new Shard(symbols, aliasBuilder, annotation);
+        try {
+            if (GafTokenizer.isSupported()) {
+                try (InputStream in = filename.endsWith(".gz") ? new GzipPipeInputStream(filename)
+                        : new FileInputStream(filename)) {
+                    shard.parse(in);
+                }
+            } else {
+                try (BufferedReader reader = GzipPipeInputStream.newBufferedReader(filename)) {
+                    shard.parse(reader);
+                }
+            }
+        } catch(IOException ex){
+            System.out.println(ex.getMessage());
+        }
+        orphansFound = shard.orphansFound;
+        consistency = shard.consistency;
+    }
+
+    /**
+     * <p>Parses ranges of the file on {@link #threads} threads and merges their shards in the order of the
+     * file</p>
+     * @return false if the file is too small to be split
+     * @throws IOException if the file can not be read
+     */
+    private boolean parseInParallel() throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            long[] bounds = splitAtLineBreaks(channel, threads);
+            if (bounds.length <= 2) {
+                return false;
+            }
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<ForkJoinTask<Shard>> tasks = new ArrayList<>();
+                for (int i = 0; i + 1 < bounds.length; i++) {
+                    long start = bounds[i];
+                    long length = bounds[i + 1] - start;
+                    tasks.add(pool.submit(() -> parseRange(channel, start, length)));
+                }
+                List<AnnotationTable> tables = new ArrayList<>(tasks.size());
+                for (ForkJoinTask<Shard> task : tasks) {
+                    tables.add(merge(task.get()));
+                }
+                annotation = new Annotation(species, annotationType, curator, AnnotationTable.merge(tables));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Parsing of " + filename + " interrupted");
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause() instanceof UncheckedIOException ? ex.getCause().getCause() : ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    //malformed lines fail the same way as on a single thread
+                    throw (RuntimeException) cause;
+                }
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        return true;
+    }
+
+    private Shard parseRange(FileChannel channel, long start, long length) {
+        Shard shard = new Shard();
+        try {
+            ByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            if (GafTokenizer.isSupported()) {
+                shard.parse(new GafTokenizer(range));
+            } else {
+                shard.parse(new BufferedReader(new InputStreamReader(new ByteBufferInputStream(range))));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        //names, classifications and aliases of the shard are sorted on its own thread
+        shard.alias = shard.aliasBuilder.build();
+        shard.annotation.getTable();
+        return shard;
+    }
+
+    /**
+     * <p>Adds symbols, aliases and flags of a shard to the result. Symbols of the shard are interned in the order
+     * the shard first saw them, so merging shards in the order of the file gives the same ids as parsing the whole
+     * file on one thread. The sorted annotations of shards are merged per name once all shards are parsed
+     * ({@link AnnotationTable#merge(java.util.List)}).</p>
+     * @return frozen annotation of the shard
+     */
+    private AnnotationTable merge(Shard shard) {
+        int[] symbolMap = new int[shard.symbols.size()];
+        for (int k = 0; k < symbolMap.length; k++) {
+            symbolMap[k] = symbols.intern(shard.symbols.getSymbol(k));
+        }
+        aliasBuilder.addAll(shard.alias, symbolMap);
+        orphansFound |= shard.orphansFound;
+        consistency |= shard.consistency;
+        return shard.annotation.getTable();
+    }
+
+    /**
+     * @return offsets of ranges of the file: the first is 0, the last the size of the file and all others follow a
+     * line break. Ranges are at most {@link #MAX_RANGE} bytes and at least {@link #MIN_RANGE} bytes long, except the
+     * last one
+     */
+    private static long[] splitAtLineBreaks(FileChannel channel, int threads) throws IOException {
+        long size = channel.size();
+        long count = Math.max(4L * threads, (size + MAX_RANGE - 1) / MAX_RANGE);
+        count = Math.min(count, Math.max(1, size / MIN_RANGE));
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        for (long i = 1; i < count; i++) {
+            long position = Math.max(size * i / count, bounds.get(bounds.size() - 1));
+            long lineEnd = -1;
+            while (lineEnd < 0 && position < size) {
+                buffer.clear();
+                int n = channel.read(buffer, position);
+                if (n <= 0) {
+                    break;
+                }
+                for (int k = 0; k < n; k++) {
+                    if (buffer.get(k) == '\n') {
+                        lineEnd = position + k + 1;
+                        break;
+                    }
+                }
+                position += n;
+            }
+            if (lineEnd < 0 || lineEnd >= size) {
+                break;
+            }
+            if (lineEnd > bounds.get(bounds.size() - 1)) {
+                bounds.add(lineEnd);
+            }
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
 
+    /**
+     * @return offset after the last complete line break in the first length bytes of the block; a line break
+     * <code>\r</code> counts only if the byte after it is known. 0 if there is none
+     */
+    private static int endOfLastLine(byte[] block, int length) {
+        for (int p = length - 2; p >= 0; p--) {
+            if (block[p] == '\n') {
+                return p + 1;
+            }
+            if (block[p] == '\r') {
+                return block[p + 1] == '\n' ? p + 2 : p + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * <p>Symbols, aliases and annotations of a part of the file, together with its orphan and consistency
+     * flags</p>
+     */
+    private final class Shard {
+
+        private final SymbolTable symbols;
+        private final Alias.Builder aliasBuilder;
+        private final Annotation annotation;
+        private Alias alias;
+        private boolean orphansFound = false;
+        private boolean consistency = false;
+
+        /**
+         * shard with its own symbols, aliases and annotation
+         */
+        Shard() {
+            this.symbols = new SymbolTable();
+            this.aliasBuilder = new Alias.Builder(symbols);
+            this.annotation = new Annotation(species, annotationType, curator);
+        }
+
+        /**
+         * shard adding directly to the given symbols, aliases and annotation
+         */
+        Shard(SymbolTable symbols, Alias.Builder aliasBuilder, Annotation annotation) {
+            this.symbols = symbols;
+            this.aliasBuilder = aliasBuilder;
+            this.annotation = annotation;
+        }
+
+        void parse(BufferedReader reader) throws IOException {
+            String line;
             while((line = reader.readLine()) != null){
-                if(line.startsWith("!")){
+                parseLine(line);
+            }
+        }
+
+        /**
+         * <p>Parses a stream in blocks; lines split by the end of a block are completed by the next one</p>
+         */
+        void parse(InputStream in) throws IOException {
+            byte[] block = new byte[BLOCK_SIZE];
+            int length = 0;
+            int n;
+            while ((n = in.read(block, length, block.length - length)) != -1) {
+                length += n;
+                int cut = endOfLastLine(block, length);
+                if (cut == 0) {
+                    if (length == block.length) {
+                        block = Arrays.copyOf(block, 2 * block.length);
+                    }
+                    continue;
+                }
+                parse(new GafTokenizer(ByteBuffer.wrap(block, 0, cut)));
+                System.arraycopy(block, cut, block, 0, length - cut);
+                length -= cut;
+            }
+            if (length > 0) {
+                parse(new GafTokenizer(ByteBuffer.wrap(block, 0, length)));
+            }
+        }
+
+        void parse(GafTokenizer tokenizer) {
+            ByteBuffer bytes = tokenizer.getBuffer();
+            while (tokenizer.nextLine()) {
+                if (tokenizer.isComment()) {
+                    continue;
+                }
+                if (!tokenizer.isAscii() || tokenizer.getNumberOfColumns() < 11) {
+                    parseLine(tokenizer.getLine());
+                    continue;
+                }
+                if (isDeleted(tokenizer, tokenizer.getTrimmedStart(6), tokenizer.getTrimmedEnd(6))) {
+                    continue;
+                }
+                int goStart = tokenizer.getTrimmedStart(4);
+                int goEnd = tokenizer.getTrimmedEnd(4);
+                if (goEnd - goStart < 3) {
+                    //no room for the prefix of a GO id; parsed as a string to fail the same way
+                    parseLine(tokenizer.getLine());
                     continue;
                 }
 
-                tokens = line.split("\t");
-                String evidenceCode = tokens[6].trim().toUpperCase();
+                int primaryStart = tokenizer.getTrimmedStart(1);
+                int primaryEnd = tokenizer.getTrimmedEnd(1);
+                int primaryID = symbols.intern(bytes, primaryStart, primaryEnd, true);
+                aliasBuilder.add(primaryID, primaryID);
 
-                if (!deleteCodes.contains(evidenceCode)) {
-                    String primaryID = tokens[1].trim().toUpperCase();
-                    updateAlias(primaryID, primaryID);
+                int secondaryID = symbols.intern(bytes, tokenizer.getTrimmedStart(2), tokenizer.getTrimmedEnd(2), true);
+                aliasBuilder.add(secondaryID, primaryID);
 
-                    String secondaryID = tokens[2].trim().toUpperCase();
-                    updateAlias(secondaryID, primaryID);
+                //aliases are split like String.split("\\|"): trailing empty aliases are dropped
+                int aliasStart = tokenizer.getStart(10);
+                int aliasesEnd = tokenizer.getEnd(10);
+                if (aliasStart == aliasesEnd) {
+                    aliasBuilder.add(symbols.intern(bytes, aliasStart, aliasStart, false), primaryID);
+                }
+                while (aliasesEnd > aliasStart && tokenizer.get(aliasesEnd - 1) == '|') {
+                    aliasesEnd--;
+                }
+                while (aliasStart < aliasesEnd) {
+                    int aliasEnd = aliasStart;
+                    while (aliasEnd < aliasesEnd && tokenizer.get(aliasEnd) != '|') {
+                        aliasEnd++;
+                    }
+                    aliasBuilder.add(symbols.intern(bytes, aliasStart, aliasEnd, false), primaryID);
+                    aliasStart = aliasEnd + 1;
+                }
 
-                    String[] aliases = tokens[10].split("\\|");
-                    for (String alias1 : aliases) {
-                        updateAlias(alias1, primaryID);
+                int id = tokenizer.parseInt(goStart + 3, goEnd);
+                int synonym = Arrays.binarySearch(synonymIds, id);
+                if (synonym >= 0) {
+                    if ((primaryEnd > primaryStart) && (id != -1)) {
+                        annotation.add(symbols.getSymbol(primaryID), synonymTerms[synonym]);
                     }
-                    String goID = tokens[4].trim().toUpperCase().substring(3);
-                    int id = stringToInt(goID);
-                    Integer id2 = id;
-                    Integer mainId = synonymHash.get(id2);
-                    if (mainId != null) {
-                        if ((primaryID.length() != 0) && (id != -1)) {
-                            annotation.add(primaryID, mainId);
-                        }
-                        consistency = true;
-                    } else {
-                        orphans.add(id2);
-                        orphansFound = true;
+                    consistency = true;
+                } else {
+                    orphansFound = true;
+                }
+            }
+        }
+
+        private boolean isDeleted(GafTokenizer tokenizer, int start, int end) {
+            for (byte[] code : deleteCodeBytes) {
+                if (tokenizer.equalsUpperCase(start, end, code)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void parseLine(String line) {
+            if(line.startsWith("!")){
+                return;
+            }
+
+            String[] tokens = line.split("\t");
+            String evidenceCode = tokens[6].trim().toUpperCase();
+
+            if (!deleteCodes.contains(evidenceCode)) {
+                String primaryID = tokens[1].trim().toUpperCase();
+                aliasBuilder.add(primaryID, primaryID);
+
+                String secondaryID = tokens[2].trim().toUpperCase();
+                aliasBuilder.add(secondaryID, primaryID);
+
+                String[] aliases = tokens[10].split("\\|");
+                for (String alias1 : aliases) {
+                    aliasBuilder.add(alias1, primaryID);
+                }
+                String goID = tokens[4].trim().toUpperCase().substring(3);
+                int id = stringToInt(goID);
+                Integer id2 = id;
+                Integer mainId = synonymHash.get(id2);
+                if (mainId != null) {
+                    if ((primaryID.length() != 0) && (id != -1)) {
+                        annotation.add(symbols.getSymbol(symbols.intern(primaryID)), mainId);
                     }
+                    consistency = true;
+                } else {
+                    orphansFound = true;
                 }
+            }
+        }
+    }
+
+    /**
+     * <p>Input stream over a memory mapped range of the file</p>
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
 
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
             }
-        } catch(IOException ex){
-            System.out.println(ex.getMessage());
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
         }
     }
     //method that take alias from tab delimited file 
@@ -191,16 +590,7 @@ public class BiNGOConsortiumAnnotationReader implements IAnnotation {
             String[] fields;
             while((line = reader.readLine()) != null){
                 fields = line.trim().split("\\t");
-                for(String f:fields){
-                    if(alias.containsKey(f)){
-                        HashSet<String> temp = alias.get(f);
-                        temp.addAll(Arrays.asList(fields));
-                        alias.put(f, temp);
-                    } else{
-                        alias.put(f, new HashSet<>(Arrays.asList(fields)));
-                    }
-                    
-                }
+                aliasBuilder.addGroup(fields);
                 
             }
         } catch(IOException ex){
@@ -225,7 +615,7 @@ public class BiNGOConsortiumAnnotationReader implements IAnnotation {
     }
 
     @Override
-    public HashMap<String, HashSet<String>> getAlias() {
+    public Alias getAliasTable() {
         return alias;
     }
 }
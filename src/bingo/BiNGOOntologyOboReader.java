@@ -37,8 +37,11 @@ import ontology.Ontology;
 import ontology.OntologyTerm;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -51,6 +54,9 @@ import java.util.Map;
  * <li>{@link #parse()} method reads and parses ontology simultaneously</li>
  * <li>instance variables have private scope instead package-private one</li>
  * <li>some instance variables were removed as unnecessary</li>
+ * <li>the file is read once: {@link #parse()} builds the full ontology and
+ * the terms of every namespace and subset, and the ontology of a namespace
+ * ({@link #getOntology(String)}) is a view over the terms of the full one</li>
  * </ol>
  * </p>
  */
@@ -62,25 +68,41 @@ public class BiNGOOntologyOboReader implements IOntologyReader {
     private String ontologyType = "unknown";
     private String namespace;
     private String filename;
+    /**
+     * synonyms of all terms of the file
+     */
+    private HashMap<Integer, Integer> fullSynonymHash;
+    /**
+     * synonyms of terms of {@link #namespace}; built on first request
+     */
     private HashMap<Integer, Integer> synonymHash;
+    /**
+     * ids of terms of every namespace and subset, in order of the file
+     */
+    private HashMap<String, List<Integer>> namespaceTerms;
+    /**
+     * connections of custom namespaces are rerouted only if the file has
+     * no [Typedef] stanzas, as parsing used to stop at the first one
+     */
+    private boolean rerouteConnections;
     private Map<String, String> termToNamespace;
     public BiNGOOntologyOboReader(File file, String namespace) {
         this(file.getPath(), namespace);
     }
 
     public BiNGOOntologyOboReader(String filename, String namespace) {
-        this.filename = filename;
-        this.namespace = namespace;
-        this.synonymHash = new HashMap<>();
-
-        parse();
-
+        this(filename, namespace, null);
     }
     
     public BiNGOOntologyOboReader(String fileName, String namespace, Map<String, String> termToNamespace){
-        this(fileName, namespace);
+        this.filename = fileName;
+        this.namespace = namespace;
         this.termToNamespace = termToNamespace;
+        this.fullSynonymHash = new HashMap<>();
+        this.namespaceTerms = new HashMap<>();
+
         parse();
+        ontology = getOntology(namespace);
     }
     // -------------------------------------------------------------------------
 
@@ -101,7 +123,6 @@ public class BiNGOOntologyOboReader implements IOntologyReader {
         }
 
         if (!ontologyType.equals("unknown")) {
-            ontology = new Ontology(curator, ontologyType);
             fullOntology = new Ontology(curator, ontologyType);
         }
 
@@ -193,39 +214,25 @@ public class BiNGOOntologyOboReader implements IOntologyReader {
                         update = true;
 
                         if (!obsolete) {
-
-                            if (namespace.equals("---") || geneNamespaces.contains(namespace)) {
-                                Integer id2 = new Integer(id);
-                                synonymHash.put(id2, id2);
+                            Integer id2 = new Integer(id);
+                            fullSynonymHash.put(id2, id2);
+                            if (!fullOntology.containsTerm(id2)) {
                                 OntologyTerm term = new OntologyTerm(name, id2);
-                                if (!ontology.containsTerm(id2)) {
-                                    ontology.add(term);
-                                    fullOntology.add(term);
-
-                                    for (String s : alt_id) {
-                                        synonymHash.put(new Integer(s), id2);
-                                    }
-                                    for (String s : is_a) {
-                                        term.addParent(new Integer(s));
-                                    }
-                                    for (String s : part_of) {
-                                        term.addContainer(new Integer(s));
-                                    }
+                                fullOntology.add(term);
+
+                                for (String s : alt_id) {
+                                    fullSynonymHash.put(new Integer(s), id2);
                                 }
-                            } else {
-                                Integer id2 = new Integer(id);
-                                OntologyTerm term = new OntologyTerm(name, id2);
-                                if (!fullOntology.containsTerm(id2)) {
-                                    fullOntology.add(term);
-                                    for (String s : is_a) {
-                                        term.addParent(new Integer(s));
-                                    }
-                                    for (String s : part_of) {
-                                        term.addContainer(new Integer(s));
-                                    }
+                                for (String s : is_a) {
+                                    term.addParent(new Integer(s));
+                                }
+                                for (String s : part_of) {
+                                    term.addContainer(new Integer(s));
+                                }
+                                for (String s : geneNamespaces) {
+                                    namespaceTerms.computeIfAbsent(s, k -> new ArrayList<>()).add(id2);
                                 }
                             }
-
                         }
 
                     }
@@ -234,48 +241,84 @@ public class BiNGOOntologyOboReader implements IOntologyReader {
 
             }
 
-            reRouteConnections();
+            rerouteConnections = true;
 
         } catch (IOException ex) {
             System.out.println("Unable to read ontology file " + filename);
         }
     }
+
+    /**
+     * <p>Ontology restricted to terms of a namespace or subset. Terms are shared
+     * with the full ontology, except for custom namespaces whose connections
+     * are rerouted: their terms are copied so that the full ontology stays
+     * unchanged.</p>
+     * @param namespace namespace or subset; "---" for the full ontology
+     * @return ontology of the namespace
+     */
+    public Ontology getOntology(String namespace) {
+        if (namespace.equals(Constants.NONE.getConstant())) {
+            return fullOntology;
+        }
+        boolean reroute = rerouteConnections && isCustomNamespace(namespace);
+        Ontology view = new Ontology(fullOntology.getCurator(), fullOntology.getType());
+        for (Integer id : namespaceTerms.getOrDefault(namespace, Collections.emptyList())) {
+            OntologyTerm term = fullOntology.getTerm(id);
+            view.add(reroute ? copyTerm(term) : term);
+        }
+        if (reroute) {
+            reRouteConnections(view);
+        }
+        return view;
+    }
+
+    private static OntologyTerm copyTerm(OntologyTerm term) {
+        OntologyTerm copy = new OntologyTerm(term.getName(), term.getId());
+        for (int parent : term.getParents()) {
+            copy.addParent(parent);
+        }
+        for (int container : term.getContainers()) {
+            copy.addContainer(container);
+        }
+        return copy;
+    }
+
+    private static boolean isCustomNamespace(String namespace) {
+        return !namespace.equals("biological_process") && !namespace.equals("molecular_function")
+                && !namespace.equals("cellular_component") && !namespace.equals("---")
+                && !namespace.equals("phenotypic_abnormality") && !namespace.equals("clinical_modifier")
+                && !namespace.equals("mode_of_inheritance") && !namespace.equals("clinical_course");
+    }
+
     //added method. The source of the method was part of parse method in BiNGO
-    private void reRouteConnections() {
+    private void reRouteConnections(Ontology ontology) {
         // explicitely reroute all connections (parent-child relationships) that
         // are missing in subontologies like GOSlim
         // avoid transitive connections
-        if (!namespace.equals("biological_process") && !namespace.equals("molecular_function")
-                && !namespace.equals("cellular_component") && !namespace.equals("---")
-                && !namespace.equals("phenotypic_abnormality") && !namespace.equals("clinical_modifier")
-                && !namespace.equals("mode_of_inheritance") && !namespace.equals("clinical_course")) {
-            //System.out.println("doSth()!");
-            for (Integer j : ontology.getTerms().keySet()) {
-                OntologyTerm o = ontology.getTerm(j);
-                HashSet<OntologyTerm> ancestors = findNearestAncestors(new HashSet<>(), j);
-                HashSet<OntologyTerm> prunedAncestors = new HashSet<>(ancestors);
-                for (OntologyTerm o2 : ancestors) {
-                    HashSet<OntologyTerm> o2Ancestors = getAllAncestors(new HashSet<>(), o2);
-                    for (OntologyTerm o3 : o2Ancestors) {
-                        if (ancestors.contains(o3)) {
-                            prunedAncestors.remove(o3);
-                        }
+        for (Integer j : ontology.getTerms().keySet()) {
+            OntologyTerm o = ontology.getTerm(j);
+            HashSet<OntologyTerm> ancestors = findNearestAncestors(ontology, new HashSet<>(), j);
+            HashSet<OntologyTerm> prunedAncestors = new HashSet<>(ancestors);
+            for (OntologyTerm o2 : ancestors) {
+                HashSet<OntologyTerm> o2Ancestors = getAllAncestors(new HashSet<>(), o2);
+                for (OntologyTerm o3 : o2Ancestors) {
+                    if (ancestors.contains(o3)) {
+                        prunedAncestors.remove(o3);
                     }
                 }
-                for (OntologyTerm o2 : prunedAncestors) {
-                    o.addParent(o2.getId());
-                }
+            }
+            for (OntologyTerm o2 : prunedAncestors) {
+                o.addParent(o2.getId());
             }
         }
-
     }
 
-    private HashSet<OntologyTerm> findNearestAncestors(HashSet<OntologyTerm> ancestors, Integer k) {
+    private HashSet<OntologyTerm> findNearestAncestors(Ontology ontology, HashSet<OntologyTerm> ancestors, Integer k) {
         for (Integer i : fullOntology.getTerm(k).getParentsAndContainers()) {
             if (!ontology.containsTerm(i)) {
-                findNearestAncestors(ancestors, i);
+                findNearestAncestors(ontology, ancestors, i);
             } else {
-                ancestors.add(ontology.getTerm(i));
+                ancestors.add(fullOntology.getTerm(i));
             }
         }
         return ancestors;
@@ -294,11 +337,37 @@ public class BiNGOOntologyOboReader implements IOntologyReader {
         return ontology;
     }
 
+    /**
+     * @return ontology of all namespaces
+     */
+    public Ontology getFullOntology() {
+        return fullOntology;
+    }
+
+    /**
+     * @return synonyms of terms of the namespace of this reader
+     */
     @Override
     public HashMap<Integer, Integer> getSynonymHash() {
+        if (synonymHash == null) {
+            HashMap<Integer, Integer> synonyms = new HashMap<>();
+            for (Map.Entry<Integer, Integer> e : fullSynonymHash.entrySet()) {
+                if (ontology.containsTerm(e.getValue())) {
+                    synonyms.put(e.getKey(), e.getValue());
+                }
+            }
+            synonymHash = synonyms;
+        }
         return synonymHash;
     }
 
+    /**
+     * @return synonyms of all terms of the file
+     */
+    public HashMap<Integer, Integer> getFullSynonymHash() {
+        return fullSynonymHash;
+    }
+
     @Override
     public String getOntologyType() {
         return ontologyType;
@@ -316,7 +385,7 @@ public class BiNGOOntologyOboReader implements IOntologyReader {
 
             pw.println("(curator=bingo)(type=namespace)");
             for (Object a : ontology.getTerms().keySet()) {
-                OntologyTerm o = fullOntology.getTerm(new Integer(a.toString()));
+                OntologyTerm o = ontology.getTerm(new Integer(a.toString()));
                 pw.print(o.getId() + " = " + o.getName());
                 boolean ok = false;
                 for (int i : o.getParentsAndContainers()) {
@@ -3,7 +3,6 @@ package bingo;
 import ontology.Annotation;
 import ontology.Ontology;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -21,6 +20,12 @@ import java.util.Set;
  * <li>new instance variables of type {@link Annotation} and {@link Ontology}</li>
  * <li>new instance variables {@link #selectedNodes}, {@link #allNodes} and {@link #alias}</li>
  *  <li>method {@link #calculate_distribution()} has been changed to be in line with upstream changes</li>
+ *  <li>new instance variable {@link #logFactorial}</li>
+ *  <li>new method {@link #calculate_corrections(int[], double[])} that passes p values as primitive doubles</li>
+ *  <li>untestable terms are pruned if pruning or Tarone correction is selected. New method
+ *  {@link #calculate_corrections(CalculateTestTask)}</li>
+ *  <li>empirical FDR based on permutations ({@link PermutationFDR})</li>
+ *  <li>new instance variable {@link #termGeneIndex} that is passed to {@link StandardDistributionCount}</li>
  * </ol>
  */
 public class BingoAlgorithm {
@@ -30,6 +35,10 @@ public class BingoAlgorithm {
     private Set<String> allNodes;
     private Annotation annotation;
     private Ontology ontology;
+    //table of ln(k!) shared by all clusters
+    private LogFactorial logFactorial;
+    //genes of terms shared by all clusters
+    private TermGeneIndex termGeneIndex;
 
     public BingoAlgorithm(Annotation annotation, Ontology ontology, StatisticsDescriptor descriptor,
                           Map<String, HashSet<String>> alias, Set<String> selectedNodes, Set<String> allNodes){
@@ -40,34 +49,90 @@ public class BingoAlgorithm {
         this.selectedNodes = selectedNodes;
         this.allNodes = allNodes;
     }
+
+    public BingoAlgorithm(Annotation annotation, Ontology ontology, StatisticsDescriptor descriptor,
+                          Map<String, HashSet<String>> alias, Set<String> selectedNodes, Set<String> allNodes,
+                          LogFactorial logFactorial){
+        this(annotation, ontology, descriptor, alias, selectedNodes, allNodes);
+        this.logFactorial = logFactorial;
+    }
+
+    public BingoAlgorithm(Annotation annotation, Ontology ontology, StatisticsDescriptor descriptor,
+                          Map<String, HashSet<String>> alias, Set<String> selectedNodes, Set<String> allNodes,
+                          LogFactorial logFactorial, TermGeneIndex termGeneIndex){
+        this(annotation, ontology, descriptor, alias, selectedNodes, allNodes, logFactorial);
+        this.termGeneIndex = termGeneIndex;
+    }
     
     public CalculateTestTask calculate_distribution() {
         
-        CalculateTestTask test;
+        StatisticTestCalculate test;
         
         //HashMap testMap;
         boolean isOver = descriptor.getRepresentation().equals(Constants.OVERSTRING.getConstant());
         test = new StatisticTestCalculate(new StandardDistributionCount(annotation,
-                            ontology, selectedNodes, allNodes, alias, isOver), descriptor.getTest(), isOver);
+                            ontology, selectedNodes, allNodes, alias, isOver, descriptor.getForkJoinPool(), termGeneIndex),
+                descriptor, logFactorial);
+        boolean tarone = descriptor.getCorrectionTest().equals(Constants.TARONE_BONFERRONI.getConstant());
+        if (descriptor.isPruning() || tarone) {
+            test.setPruning(Double.parseDouble(descriptor.getpValue()), tarone);
+        }
         return test;
     }
 
     public CalculateCorrectionTask calculate_corrections(Map testMap) {
-        HashMap correctionMap;
+        if (testMap == null) {
+            return calculate_corrections(null, null);
+        }
+        int[] termIds = new int[testMap.size()];
+        double[] pValues = new double[testMap.size()];
+        int i = 0;
+        for (Object key : testMap.keySet()) {
+            termIds[i] = Integer.parseInt(key.toString());
+            pValues[i] = Double.parseDouble(testMap.get(key).toString());
+            i++;
+        }
+        return calculate_corrections(termIds, pValues);
+    }
+
+    /**
+     * <p>Creates multiple testing correction chosen by user</p>
+     * @param test calculated statistical test
+     * @return correction or null if correction is not selected
+     */
+    public CalculateCorrectionTask calculate_corrections(CalculateTestTask test) {
+        if (descriptor.getCorrectionTest().equals(Constants.TARONE_BONFERRONI.getConstant())) {
+            return new TaroneBonferroni(test.getTermIds(), test.getPValues(), test.getTaroneFactor());
+        }
+        if (descriptor.getCorrectionTest().equals(Constants.PERMUTATION_FDR.getConstant())) {
+            if (!(test instanceof StatisticTestCalculate)) {
+                throw new IllegalArgumentException("Empirical FDR requires " + StatisticTestCalculate.class.getName());
+            }
+            return new PermutationFDR((StatisticTestCalculate) test, descriptor.getNumberOfPermutations(),
+                    descriptor.getPermutationSeed(), descriptor.getForkJoinPool());
+        }
+        return calculate_corrections(test.getTermIds(), test.getPValues());
+    }
+
+    /**
+     * <p>Creates multiple testing correction chosen by user</p>
+     * @param termIds ids of tested terms
+     * @param pValues p values of tested terms
+     * @return correction or null if correction is not selected
+     */
+    public CalculateCorrectionTask calculate_corrections(int[] termIds, double[] pValues) {
         CalculateCorrectionTask correction = null;
 
         if (descriptor.getCorrectionTest().equals(Constants.NONE.getConstant())) {
         } else {
             if(descriptor.getCorrectionTest().equals(Constants.BONFERRONI.getConstant())){
-                correction = new Bonferroni(testMap);
+                correction = new Bonferroni(termIds, pValues);
             }else if(descriptor.getCorrectionTest().equals(Constants.BENJAMINI_HOCHBERG_FDR.getConstant())){
                 try {
-                        correction = new BenjaminiHochbergFDR(testMap);
+                        correction = new BenjaminiHochbergFDR(termIds, pValues);
                     } catch (NullPointerException ex) {
                         correction = null;
                     } 
-            }else{
-                correctionMap = null;
             }
            
         }
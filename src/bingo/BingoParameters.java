@@ -32,6 +32,10 @@ import java.util.Set;
  * <li>private String inputFileName</li>
  * <li>{@link #numberOfUsedCores}</li>
  * <li>{@link #mappingFile}</li>
+ * <li>{@link #pruning}</li>
+ * <li>{@link #numberOfPermutations}</li>
+ * <li>{@link #permutationSeed}</li>
+ * <li>{@link #topLimit}</li>
  * </ul>
  * </li>
  * <li>the following methods were removed:
@@ -58,6 +62,10 @@ import java.util.Set;
  * <li>{@link #getTextInput()}</li>
  * <li>{@link #getNumberOfUsedCores() }</li>
  * <li>{@link #getMappingFile() }</li>
+ * <li>{@link #isPruning() }</li>
+ * <li>{@link #getNumberOfPermutations() }</li>
+ * <li>{@link #getPermutationSeed() }</li>
+ * <li>{@link #getTopLimit() }</li>
  * </ol>
  */
 
@@ -154,6 +162,30 @@ public final class BingoParameters {
 
     private int numberOfUsedCores;
 
+    /**
+     * <p>
+     * if true terms that can not reach significance are not tested</p>
+     */
+    private boolean pruning;
+
+    /**
+     * <p>
+     * number of random samples used by the empirical FDR correction</p>
+     */
+    private int numberOfPermutations = PermutationFDR.DEFAULT_NUMBER_OF_PERMUTATIONS;
+
+    /**
+     * <p>
+     * seed of random numbers used by the empirical FDR correction</p>
+     */
+    private long permutationSeed;
+
+    /**
+     * <p>
+     * the largest number of terms written per cluster. 0 if all significant terms are written</p>
+     */
+    private int topLimit;
+
 
     /**
      * <p>Constructor</p>
@@ -248,13 +280,69 @@ public final class BingoParameters {
                     case "3":
                         this.correctionTest = Constants.NONE.getConstant();
                         break;
+                    case "4":
+                        this.correctionTest = Constants.TARONE_BONFERRONI.getConstant();
+                        break;
+                    case "5":
+                        this.correctionTest = Constants.PERMUTATION_FDR.getConstant();
+                        break;
                     default:
                         throw new IllegalArgumentException("Flag -ct allowed values:\n"
                                 + "1 - Benjamini & Hochberg False Discovery Rate (FDR) correction"
-                                + "\n2 - Bonferroni\n3 - No correction\n"
+                                + "\n2 - Bonferroni\n3 - No correction\n4 - Tarone Bonferroni\n"
+                                + "5 - Empirical FDR based on permutations\n"
                                 + "Found value: " + args[i + 1]);
                 }
             }
+            if (args[i].equals("-pn")) {
+                try {
+                    numberOfPermutations = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException ex) {
+                    System.out.println(args[i + 1] + " is not an integer!");
+                    throw new IllegalArgumentException("Number of permutations must "
+                            + "be an integer");
+                }
+                if (numberOfPermutations < 1) {
+                    throw new IllegalArgumentException("Number of permutations must "
+                            + "be positive");
+                }
+            }
+            if (args[i].equals("-ps")) {
+                try {
+                    permutationSeed = Long.parseLong(args[i + 1]);
+                } catch (NumberFormatException ex) {
+                    System.out.println(args[i + 1] + " is not an integer!");
+                    throw new IllegalArgumentException("Seed of permutations must "
+                            + "be an integer");
+                }
+            }
+            if (args[i].equals("-tp")) {
+                switch (args[i + 1]) {
+                    case "1":
+                        this.pruning = false;
+                        break;
+                    case "2":
+                        this.pruning = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Flag -tp allowed values:\n"
+                                + "1 - test all terms\n2 - prune terms that can not reach significance\n"
+                                + "Found value: " + args[i + 1]);
+                }
+            }
+            if (args[i].equals("-top")) {
+                try {
+                    topLimit = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException ex) {
+                    System.out.println(args[i + 1] + " is not an integer!");
+                    throw new IllegalArgumentException("Number of written terms must "
+                            + "be an integer");
+                }
+                if (topLimit < 0) {
+                    throw new IllegalArgumentException("Number of written terms must "
+                            + "not be negative");
+                }
+            }
             if (args[i].equals("-rs")) {
                 if (args[i + 1].equals("1")) {
                     this.referenceSet = Constants.GENOME.getConstant();
@@ -412,6 +500,15 @@ public final class BingoParameters {
         System.out.printf("%-30s%s%n", "                 ", "2 category after correction [default: 2]\n");
         System.out.printf("%-30s%s%n", "    -st <statistical test>", "1 hypergeometric");
         System.out.printf("%-30s%s%n", "                          ", "2 binomial [default: 1]\n");
+        System.out.printf("%-30s%s%n", "    -ct <correction>", "1 Benjamini & Hochberg FDR");
+        System.out.printf("%-30s%s%n", "                    ", "2 Bonferroni");
+        System.out.printf("%-30s%s%n", "                    ", "3 no correction");
+        System.out.printf("%-30s%s%n", "                    ", "4 Tarone Bonferroni (prunes untestable terms)");
+        System.out.printf("%-30s%s%n", "                    ", "5 empirical FDR based on permutations [default: 1]\n");
+        System.out.printf("%-30s%s%n", "    -pn <permutations>", "Number of permutations for -ct 5 [default: 1000]\n");
+        System.out.printf("%-30s%s%n", "    -ps <seed>", "Seed of random numbers for -ct 5 [default: 0]\n");
+        System.out.printf("%-30s%s%n", "    -tp <pruning>", "1 test all terms");
+        System.out.printf("%-30s%s%n", "                 ", "2 skip terms that can not reach significance [default: 1]\n");
         System.out.printf("%-30s%s%n", "    -rs <reference set>", "1 whole annotation");
         System.out.printf("%-30s%s%n", "                       ", "custom reference set [default: 1]\n");
         System.out.printf("%-30s%s%n", "    -ns <namespace>", "O phenotypic abnormality (HPO)");
@@ -427,8 +524,11 @@ public final class BingoParameters {
         System.out.printf("%-30s%s%n", "    -dc <delete codes>", "Evidence codes\n");
         System.out.printf("%-30s%s%n", "    -sf <folder>", "Folder where results will be saved [default: ./]\n");
         System.out.printf("%-30s%s%n", "    -p <significance level>", "Defines treshold value [default: 0.05]\n");
+        System.out.printf("%-30s%s%n", "    -top <number of terms>", "Writes only the best significant terms per cluster");
+        System.out.printf("%-30s%s%n", "                          ", "0 writes all significant terms [default: 0]\n");
         System.out.printf("%-30s%s%n", "    -e <name of ontology>", "HPO or GO [default: GO]\n");
-        System.out.printf("%-30s%s%n", "    -t <number of threads>", "Number of threads (works only for batch mode) [default: 1]\n");
+        System.out.printf("%-30s%s%n", "    -t <number of threads>", "Number of threads. Batch mode tests clusters in parallel,");
+        System.out.printf("%-30s%s%n", "                          ", "a single cluster splits its terms across the threads [default: 1]\n");
         System.out.printf("%-30s%s%n", "    -s <species>", "Name of species\n");
         System.out.printf("%-30s%s%n", "    -m <mapping file>", "TAB delimited file containing IDs\n");
         System.out.printf("%-30s%s%n", "    -h", "Prints this help");
@@ -458,6 +558,22 @@ public final class BingoParameters {
         return numberOfUsedCores;
     }
 
+    public boolean isPruning() {
+        return pruning;
+    }
+
+    public int getNumberOfPermutations() {
+        return numberOfPermutations;
+    }
+
+    public long getPermutationSeed() {
+        return permutationSeed;
+    }
+
+    public int getTopLimit() {
+        return topLimit;
+    }
+
     public Set<String> getDeleteCodes() {
         return deleteCodes;
     }
@@ -38,13 +38,10 @@ package bingo;
  * * corrected p-values.
  * * Modified by Radoslav Davidović July 2018
  **/
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -91,6 +88,11 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <li>added instance variable {@link #numberOfClusters}</li>
  * <li>added instance variable {@link #outputDir}</li>
  * <li>added instance variable {@link #selectedNodes}</li>
+ * <li>reference sets are built from {@link ReferenceStatistics} shared by all clusters; a cluster keeps only
+ * names it changes</li>
+ * <li>identifiers of aliases are looked up as symbol ids of {@link Alias}</li>
+ * <li>{@link #getClassificationsFromVector(java.util.Set, java.util.Set)} reads classifications resolved once per
+ * run by {@link TermGeneIndex#getNodeTerms(String)}; term ids are returned in ascending order</li>
  * </ul>
  * </p> *********************************************************************
  */
@@ -214,18 +216,21 @@ public class BingoRunner implements Runnable {
         String[] nodes = selectedNodes.split("\\s+");
         // HashSet for storing the canonical names
         HashSet<String> canonicalNameVector = new HashSet<>();
-        Set<Set<String>> mapNames = new HashSet<>();
+        Alias alias = parser.getAliasTable();
+        // identifiers of names seen so far; identifiers are sorted, so equal groups have equal buffers
+        Set<IntBuffer> mapNames = new HashSet<>();
         // iterate over every node view to get the canonical names.
         for (int i = 0; i < nodes.length; i++) {
             if (nodes[i] != null && nodes[i].length() != 0 && !canonicalNameVector.contains(nodes[i].toUpperCase())) {
-                if (mapNames.contains(parser.getAlias().get(nodes[i].toUpperCase()))) {
-                    redundantIDs.put(nodes[i].toUpperCase(),
-                            parser.getAlias().get(nodes[i].toUpperCase()));
+                int[] identifiers = alias.getIdentifiers(alias.getNameId(nodes[i].toUpperCase()));
+                if (identifiers != null && mapNames.contains(IntBuffer.wrap(identifiers))) {
+                    redundantIDs.put(nodes[i].toUpperCase(), alias.getIdentifiers(nodes[i].toUpperCase()));
 
                 }
             
-                if (parser.getAlias().get(nodes[i]) != null) {
-                    mapNames.add(parser.getAlias().get(nodes[i]));
+                identifiers = alias.getIdentifiers(alias.getNameId(nodes[i]));
+                if (identifiers != null) {
+                    mapNames.add(IntBuffer.wrap(identifiers));
                 }
                 canonicalNameVector.add(nodes[i]);
              
@@ -241,34 +246,8 @@ public class BingoRunner implements Runnable {
      * @return HashSet containing the canonical names.
      */
     public Set<String> getAllCanonicalNamesFromAnnotation(Set<String> selectedNodes) {
-        String[] nodes = parser.getAnnotation().getNames();
-        // HashSet for storing the canonical names
-        HashSet<String> canonicalNameVector = new HashSet<>();
-        for (int i = 0; i < nodes.length; i++) {
-            if (nodes[i] != null && (nodes[i].length() != 0)) {
-                canonicalNameVector.add(nodes[i].toUpperCase());
-            }
-        }
-
-        // replace canonical names in reference set that match one of the
-        // canonical names in the selected cluster, to get rid of e.g. splice
-        // variants if the non-splice-specific gene is part of the selection,
-        // and to avoid conflicts between names in ref set and selection
-        Map<String, HashSet<String>> alias = parser.getAlias();
-        Iterator it2 = selectedNodes.iterator();
-        while (it2.hasNext()) {
-            String name = it2.next() + "";
-            Set tmp = alias.get(name);
-            if (tmp != null) {
-                Iterator it = tmp.iterator();
-                while (it.hasNext()) {
-                    canonicalNameVector.remove(it.next() + "");
-                }
-                // add selected node name
-                canonicalNameVector.add(name);
-            }
-        }
-        return canonicalNameVector;
+        return parser.getReferenceStatistics(Constants.GENOME.getConstant())
+                .getReferenceNodes(selectedNodes, parser.getAliasTable());
     }
 
     /**
@@ -279,50 +258,11 @@ public class BingoRunner implements Runnable {
      * @return HashSet containing the canonical names.
      */
     public Set<String> getAllCanonicalNamesFromReferenceSet(String refSet, Set<String> selectedNodes) {
-        HashSet<String> nodes = parseReferenceSet(refSet);
-        // HashSet for storing the canonical names
-        HashSet<String> canonicalNameVector = new HashSet<>();
-        for (String s : nodes) {
-            if (s.length() != 0) {
-                canonicalNameVector.add(s.toUpperCase());
-            }
-        }
-
-        // replace canonical names in reference set that match one of the
-        // canonical names in the selected cluster, to get rid of e.g. splice
-        // variants if the non-splice-specific gene is part of the selection,
-        // and to avoid conflicts between names in ref set and selection
-        Map<String, HashSet<String>> alias = parser.getAlias();
-        Iterator it2 = selectedNodes.iterator();
-        while (it2.hasNext()) {
-            String name = it2.next() + "";
-            Set<String> tmp = alias.get(name);
-            if (tmp != null) {
-                Iterator it = tmp.iterator();
-                while (it.hasNext()) {
-                    canonicalNameVector.remove(it.next() + "");
-                }
-                // add selected node name
-                canonicalNameVector.add(name);
-            }
-        }
-        return canonicalNameVector;
+        return parser.getReferenceStatistics(refSet).getReferenceNodes(selectedNodes, parser.getAliasTable());
     }
 
     public HashSet<String> parseReferenceSet(String refSetFile) {
-
-        HashSet<String> refSet = new HashSet<>();
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(new File(refSetFile)));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] tokens = line.trim().split("\t");
-                refSet.add(tokens[0].trim().toUpperCase());
-            }
-        } catch (IOException e) {
-            System.out.println("Error reading reference file: " + e);
-        }
-        return refSet;
+        return ReferenceStatistics.readReferenceSet(refSetFile);
     }
 
     /**
@@ -333,40 +273,23 @@ public class BingoRunner implements Runnable {
      * @return int[] classifications.
      */
     public int[] getClassificationsFromVector(Set<String> canonicalNameVector, Set<String> noClassificationsSet) {
-        // HashSet for the classifications.
-        Set<String> classificationsVector = new HashSet<>();
-        Map<String, HashSet<String>> alias = parser.getAlias();
-        // array for go labels.
-        int[] goLabelsName;
-        Iterator it2 = canonicalNameVector.iterator();
-        while (it2.hasNext()) {
-            String name = it2.next() + "";
-            Set<String> identifiers = alias.get(name);
-            Set<String> cls = new HashSet<>();
-            // array for go labels.
-            if (identifiers != null) {
-                Iterator it = identifiers.iterator();
-                while (it.hasNext()) {
-                    goLabelsName = parser.getAnnotation().getClassifications(it.next() + "");
-                    for (int t = 0; t < goLabelsName.length; t++) {
-                        cls.add(goLabelsName[t] + "");
-                    }
-                }
-            }
-            if (cls.isEmpty()) {
+        // classifications are resolved once per run by the term gene index
+        TermGeneIndex termGeneIndex = parser.getTermGeneIndex();
+        BitSet classificationsVector = new BitSet(termGeneIndex.getNumberOfTerms());
+        for (String name : canonicalNameVector) {
+            int[] terms = termGeneIndex.getNodeTerms(name);
+            if (terms.length == 0) {
                 noClassificationsSet.add(name);
             }
-            Iterator it3 = cls.iterator();
-            while (it3.hasNext()) {
-                classificationsVector.add(it3.next() + "");
+            for (int term : terms) {
+                classificationsVector.set(term);
             }
         }
-        int[] classifications = new int[classificationsVector.size()];
-        it2 = classificationsVector.iterator();
+        int[] classifications = new int[classificationsVector.cardinality()];
         int i = 0;
-        while (it2.hasNext()) {
-            classifications[i] = Integer.parseInt(it2.next() + "");
-            i++;
+        for (int term = classificationsVector.nextSetBit(0); term >= 0;
+                term = classificationsVector.nextSetBit(term + 1)) {
+            classifications[i++] = termGeneIndex.getOntology().getTermId(term);
         }
         return classifications;
     }
@@ -381,16 +304,14 @@ public class BingoRunner implements Runnable {
      * @param noClassificationsSet genes / proteins without annotations
      */
     public void performCalculations(Set<String> selectedNodes, Set<String> allNodes, Set<String> noClassificationsSet) {
-        Map testMap = null;
-        Map correctionMap = null;
         BingoAlgorithm algorithm = new BingoAlgorithm(parser.getAnnotation(), parser.getOntology(), descriptor,
-                parser.getAlias(), selectedNodes, allNodes);
+                parser.getAlias(), selectedNodes, allNodes, parser.getLogFactorial(),
+                parser.getTermGeneIndex());
         
         CalculateTestTask test = algorithm.calculate_distribution();
 
         try {
             test.calculate();
-            testMap = test.getTestMap();
         } catch (Exception e) {
 
             e.printStackTrace();
@@ -398,7 +319,7 @@ public class BingoRunner implements Runnable {
         CalculateCorrectionTask correction = null;
         if (!descriptor.getCorrectionTest().equals(Constants.NONE.getConstant())) {
             //System.out.println(params.getCategory());
-            correction = algorithm.calculate_corrections(testMap);
+            correction = algorithm.calculate_corrections(test);
 
             try {
                 correction.calculate();
@@ -409,11 +330,6 @@ public class BingoRunner implements Runnable {
 
         }
 
-        if ((correction != null) && (!descriptor.getTest().equals(Constants.NONE.getConstant()))) {
-            correctionMap = correction.getCorrectionMap();
-
-        }
-
         CreateBiNGOFile file;
         file = new CreateBiNGOFile(test, correction, parser, descriptor, selectedNodes, noClassificationsSet, outputDir,
                 clusterName, Constants.CATEGORY_CORRECTION.getConstant());
@@ -32,11 +32,6 @@ package bingo;
  * * Date: Mar.25.2005
  * * Description: Class that calculates the value of 1 - Cumulative Binomial Distribution for given parameters.         
  **/
-import java.math.BigDecimal;
-import java.math.BigInteger;
-
-import cern.jet.stat.Probability;
-
 /**
  * *****************************************************************<br>
  * BinomialDistribution.java Steven Maere & Karel Heymans (c) March 2005<br>
@@ -44,7 +39,14 @@ import cern.jet.stat.Probability;
  * <ol>Changes:
  *  <li>All static variables are now instance variables</li>
  *  <li>class implements {@link IDistribution} interface</li>
- *  <li>methods {@link #calculateBinomialDistribution()} and {@link #decimalPow(java.math.BigDecimal, java.math.BigInteger)} are private</li>
+ *  <li>methods {@link #calculateBinomialDistribution()} and <code>decimalPow(BigDecimal, BigInteger)</code> are private</li>
+ *  <li>{@link #calculateBinomialDistribution()} returns primitive double</li>
+ *  <li>new method {@link #calculateMinimumProbability()}</li>
+ *  <li>tails are evaluated as regularized incomplete beta function in log space ({@link IncompleteBeta}) instead of
+ *  Colt. Method <code>decimalPow(BigDecimal, BigInteger)</code> and constant <code>SCALE_RESULT</code> were
+ *  removed</li>
+ *  <li>new constructor {@link #BinomialDistribution(int, int, int, int, boolean, LogFactorial, SuccessProbabilityCache)}
+ *  </li>
  * </ol>
  * --------------------------
  * <p>
@@ -77,15 +79,18 @@ public class BinomialDistribution implements IDistribution {
     private int bigN;
     /* chance of success */
     private double p;
+    /* ln(p) */
+    private double logP;
+    /* ln(1 - p) */
+    private double logQ;
     /**
      * <p>If true calculates over-representation, otherwise underrepresentation</p>
      */
     private boolean isOver = true;
-    
     /**
-     * scale of result.
+     * table of ln(k!) shared by all tests. If null logarithms are computed by Colt.
      */
-    private static final int SCALE_RESULT = 100;
+    private LogFactorial logFactorial;
 
     /*--------------------------------------------------------------
 	CONSTRUCTOR.
@@ -103,16 +108,41 @@ public class BinomialDistribution implements IDistribution {
         this.bigX = bigX;
         this.n = n;
         this.bigN = bigN;
-        this.p = n * 1.0 / bigN;
+        setSuccessProbability(SuccessProbabilityCache.create(n, bigN));
     }
     
      public BinomialDistribution(int x, int bigX, int n, int bigN, boolean isOver) {
+        this(x, bigX, n, bigN);
+        this.isOver = isOver;
+    }
+
+    /**
+     * constructor that uses precomputed logarithms.
+     *
+     * @param x number of genes with GO category B in cluster A.
+     * @param bigX number of genes in cluster A.
+     * @param n number of genes with GO category B in the whole genome.
+     * @param bigN number of genes in whole genome.
+     * @param isOver true for over-representation, false for under-representation
+     * @param logFactorial shared table of ln(k!). If null Colt is used.
+     * @param probabilities shared probabilities of success. If null p is computed for this test only.
+     */
+    public BinomialDistribution(int x, int bigX, int n, int bigN, boolean isOver, LogFactorial logFactorial,
+                                SuccessProbabilityCache probabilities) {
         this.x = x;
         this.bigX = bigX;
         this.n = n;
         this.bigN = bigN;
-        this.p = n * 1.0 / bigN;
         this.isOver = isOver;
+        this.logFactorial = logFactorial;
+        setSuccessProbability(probabilities == null ? SuccessProbabilityCache.create(n, bigN)
+                : probabilities.get(n, bigN));
+    }
+
+    private void setSuccessProbability(double[] probability) {
+        this.p = probability[0];
+        this.logP = probability[1];
+        this.logQ = probability[2];
     }
 
     /*--------------------------------------------------------------
@@ -122,40 +152,43 @@ public class BinomialDistribution implements IDistribution {
      * method that conducts the calculations. p = 1 -
      * sum{C(X,i)*(n/N)^i*(1-n/N)^(X-i)} for i=0 ... x-1
      *
-     * @return String with value of calculations.
+     * @return value of calculations.
      */
-    private String calculateBinomialDistribution() {
+    private double calculateBinomialDistribution() {
 
-        double tmp = isOver ? Probability.binomialComplemented(x - 1, bigX, p) : Probability.binomial(x, bigX, p);
-        BigDecimal sum = new BigDecimal(tmp);
-        return sum.toString();
+        if (isOver) {
+            // P(K >= x) = I_p(x, X - x + 1)
+            if (x <= 0) {
+                return 1;
+            }
+            if (x > bigX) {
+                return 0;
+            }
+            return IncompleteBeta.regularized(x, bigX - x + 1, p, logP, logQ, logFactorial);
+        }
+        // P(K <= x) = I_(1-p)(X - x, x + 1)
+        if (x >= bigX) {
+            return 1;
+        }
+        if (x < 0) {
+            return 0;
+        }
+        return IncompleteBeta.regularized(bigX - x, x + 1, 1 - p, logQ, logP, logFactorial);
 
     }
 
     /**
-     * Method that calulates a bigdecimal to a certain power (BigInteger). e.g.
-     * 0.002^3.
+     * the most extreme x is X for over-representation and 0 for under-representation.
      *
-     * @param x the BigDecimal
-     * @param pow the power
-     * @return BigDecimal the result
+     * @return p^X or (1 - p)^X
      */
-    private BigDecimal decimalPow(BigDecimal x, BigInteger pow) {
-
-        if (pow.equals(new BigInteger("0"))) {
-            return new BigDecimal("1");
-        } else {
-            BigDecimal product = x;
-
-            for (BigInteger i = new BigInteger("1"); !i.equals(pow); i = i.add(new BigInteger("1"))) {
-                product = product.multiply(x);
-            }
-            return product.setScale(SCALE_RESULT, BigDecimal.ROUND_HALF_UP);
-        }
+    @Override
+    public double calculateMinimumProbability() {
+        return isOver ? Math.pow(p, bigX) : Math.pow(1 - p, bigX);
     }
 
     @Override
-    public String calculateDistribution() {
+    public double calculateProbability() {
         return calculateBinomialDistribution();
     }
 
@@ -32,8 +32,6 @@ package bingo;
  * * Date: Mar.25.2005
  * * Description: Class implementing the Bonferroni multiple testing correction.         
  **/
-import java.math.BigDecimal;
-import java.util.HashMap;
 import java.util.Map;
 
 
@@ -57,6 +55,10 @@ import java.util.Map;
  *      <li>variable {@link #adjustedPvalues} is instance variable not a static one</li>
  *      <li>new constructor {@link #Bonferroni(java.util.Map) }</li>
  *      <li>inner classes <code>HashEntry</code> and <code>HashComprator</code> were removed</li>
+ *      <li>new constructor {@link #Bonferroni(int[], double[])}. Adjusted p-values are stored as doubles, the map
+ *      of corrected p-values is built by {@link CalculateCorrectionTask#getCorrectionMap()} on request</li>
+ *      <li>correction is calculated in {@link #adjust(double[], int[])} with primitive doubles instead of
+ *      BigDecimal. Variable <code>adjustedPvalues</code> was removed</li>
  * </ol>
  * </p>
  * <p>
@@ -65,21 +67,6 @@ import java.util.Map;
  */
 public class Bonferroni extends CalculateCorrectionTask {
 
-    /*--------------------------------------------------------------
-	FIELDS.
-	--------------------------------------------------------------*/
-
-    /**
-     * the adjusted p-values ordered in ascending order. Bila static
-     */
-    private String[] adjustedPvalues;
-
-    /**
-     * hashmap with the results (adjusted p-values) as values and the GO labels
-     * as keys. Bila static
-     */
-    private HashMap<String, String> correctionMap;
-
     /*--------------------------------------------------------------
 	CONSTRUCTOR.
 	--------------------------------------------------------------*/
@@ -93,7 +80,18 @@ public class Bonferroni extends CalculateCorrectionTask {
     public Bonferroni(Map golabelstopvalues) {
 
         super(golabelstopvalues);
-        this.adjustedPvalues = new String[numberOfTests];
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param termIds ids of tested terms
+     * @param pValues p values of tested terms
+     */
+    public Bonferroni(int[] termIds, double[] pValues) {
+
+        super(termIds, pValues);
 
     }
 
@@ -104,47 +102,35 @@ public class Bonferroni extends CalculateCorrectionTask {
      * method that calculates the bonferroni procedure p &lt alpha/numberOfTests i* (istar)
  first i such that the inequality is correct. reject hypotheses for
  i=1...i* adjusted p-value = numberOfTests*p
+     *
+     * @param pValues raw p values
+     * @param order not needed by Bonferroni correction
+     * @return adjusted p values in the same order as pValues
      */
     @Override
-    public void calculate() {
-        String[] ordenedPvalues = super.getOrdenedPvalues();
+    public double[] adjust(double[] pValues, int[] order) {
+        int m = pValues.length;
+        double[] adjusted = new double[m];
         // calculating adjusted p-values.
-        BigDecimal min = new BigDecimal("" + 1);
-        BigDecimal mp;
-
-        for (int i = 0; i < numberOfTests; i++) {
-            mp = new BigDecimal("" + numberOfTests).multiply(new BigDecimal(ordenedPvalues[i]));
-            if (mp.compareTo(min) < 0) {
-                adjustedPvalues[i] = mp.toString();
-            } else {
-                adjustedPvalues[i] = min.toString();
-            }
-        }
-
-        String[] sortedGOLabels = super.getOrdenedGOLabels();
-        correctionMap = new HashMap<>();
-        for (int i = 0; i < adjustedPvalues.length && i < sortedGOLabels.length; i++) {
-            correctionMap.put(sortedGOLabels[i], adjustedPvalues[i]);
+        for (int i = 0; i < m; i++) {
+            adjusted[i] = Math.min(1, m * pValues[i]);
         }
-    }
-
-    /**
-     * getter for the map of corrected p-values.
-     *
-     * @return HashMap correctionMap.
-     */
-    @Override
-    public HashMap<String, String> getCorrectionMap() {
-        return correctionMap;
+        return adjusted;
     }
 
     /**
      * getter for the adjusted p-values.
      *
-     * @return String[] with the adjusted p-values.
+     * @return adjusted p-values ordered in ascending order.
      */
 
-    public String[] getAdjustedPvalues() {
+    public double[] getAdjustedPvalues() {
+        double[] corrected = getCorrectedPValues();
+        int[] order = getOrder();
+        double[] adjustedPvalues = new double[numberOfTests];
+        for (int i = 0; i < numberOfTests; i++) {
+            adjustedPvalues[i] = corrected[order[i]];
+        }
         return adjustedPvalues;
     }
 
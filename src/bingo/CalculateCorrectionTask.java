@@ -34,7 +34,6 @@ package bingo;
  * * Modified by Radoslav Davidović 2018
  **/
 
-import java.math.BigDecimal;
 import java.util.*;
 
 /**
@@ -44,36 +43,45 @@ import java.util.*;
  * <li>added constructor {@link #CalculateCorrectionTask(Map)}</li>
  * <li>the following instance variables were added:
  *  <ul>
- *      <li>{@link #hash}</li>
- *      <li>{@link #ordenedGOLabels}</li>
- *      <li>{@link #ordenedPvalues}</li>
+ *      <li>{@link #termIds}</li>
+ *      <li>{@link #pValues}</li>
+ *      <li>{@link #order}</li>
  *      <li>{@link #numberOfTests}</li>
  *  </ul>
  *  <li>the following methods were added:</li>
  *      <ul>
- *          <li>{@link #parse()}</li>
- *
+ *          <li>{@link #getOrderedPValues()}</li>
+ *          <li>{@link #getCorrectedPValues()}</li>
  *      </ul>
  *  <li>methods {@link #getOrdenedGOLabels()} and {@link #getOrdenedPvalues()} are not abstract any more</li>
  * </li>
+ * <li>new constructor {@link #CalculateCorrectionTask(int[], double[])}. P values are sorted as primitive doubles;
+ * text is produced only on request by {@link #getCorrectionMap()}</li>
+ * <li>class implements {@link ICorrection}; {@link #calculate()} is not abstract any more</li>
  * </ol>
  */
 
-public abstract class CalculateCorrectionTask {
+public abstract class CalculateCorrectionTask implements ICorrection {
     /**
-     * <p>array containing pairs of terms and corresponding p values.</p>
-     *
+     * ids of tested terms.
      */
-    private HashEntry[] hash;
-
+    private int[] termIds;
+    /**
+     * raw p values, parallel to {@link #termIds}.
+     */
+    private double[] pValues;
     /**
-     * the goLabels ordered according to the ordered p values.
+     * indices of {@link #termIds} in ascending order of p values.
      */
-    private String[] ordenedGOLabels;
+    private int[] order;
     /**
-     * the raw p-values ordered in ascending order.
+     * adjusted p values, parallel to {@link #termIds}. Filled by {@link #calculate()}.
      */
-    private String[] ordenedPvalues;
+    private double[] correctedPValues;
+    /**
+     * map with term ids as keys and adjusted p values as values. Built on first request.
+     */
+    private Map<String, String> correctionMap;
 
     /**
      * the number of tests.
@@ -85,61 +93,109 @@ public abstract class CalculateCorrectionTask {
      * @param golabelstopvalues Hashmap of Strings with the goLabels and their p values.
      */
     public CalculateCorrectionTask(Map golabelstopvalues) {
+        this(keys(golabelstopvalues), values(golabelstopvalues));
+    }
 
-        // Get all the go labels and their corresponding pvalues from the map
-
-        Iterator iteratorGoLabelsSet = golabelstopvalues.keySet().iterator();
-
-        hash = new HashEntry[golabelstopvalues.size()];
-
-        String goLabel;
-        for (int i = 0; iteratorGoLabelsSet.hasNext(); i++) {
-            goLabel = iteratorGoLabelsSet.next().toString();
-            hash[i] = new HashEntry(goLabel, golabelstopvalues.get(new Integer(goLabel)).toString());
+    /**
+     * <p>Constructor that initializes instance variables</p>
+     * @param termIds ids of tested terms
+     * @param pValues p values of tested terms; index i corresponds to index i of termIds
+     */
+    public CalculateCorrectionTask(int[] termIds, double[] pValues) {
+        if (termIds.length != pValues.length) {
+            throw new IllegalArgumentException("Number of terms and number of p values differ");
         }
+        this.termIds = termIds;
+        this.pValues = pValues;
+        this.order = PValueOrder.ascending(pValues);
+        this.numberOfTests = termIds.length;
+    }
 
-        Arrays.sort(hash, new Comparator<HashEntry>() {
-            @Override
-            public int compare(HashEntry o1, HashEntry o2) {
-                return (new BigDecimal((o1).value)).compareTo(new BigDecimal((o2).value));
-            }
-        });
-        this.numberOfTests = golabelstopvalues.size();
-        parse();
+    private static int[] keys(Map golabelstopvalues) {
+        int[] keys = new int[golabelstopvalues.size()];
+        int i = 0;
+        for (Object key : golabelstopvalues.keySet()) {
+            keys[i++] = Integer.parseInt(key.toString());
+        }
+        return keys;
+    }
 
+    private static double[] values(Map golabelstopvalues) {
+        double[] values = new double[golabelstopvalues.size()];
+        int i = 0;
+        for (Object key : golabelstopvalues.keySet()) {
+            values[i++] = Double.parseDouble(golabelstopvalues.get(key).toString());
+        }
+        return values;
     }
 
-    private void parse() {
-        ordenedGOLabels = new String[numberOfTests];
-        ordenedPvalues = new String[numberOfTests];
+    /**
+     * @return the raw p values ordered in ascending order
+     */
+    protected double[] getOrderedPValues() {
+        double[] ordered = new double[numberOfTests];
         for (int i = 0; i < numberOfTests; i++) {
-            ordenedGOLabels[i] = hash[i].key;
-            ordenedPvalues[i] = hash[i].value;
+            ordered[i] = pValues[order[i]];
         }
-
+        return ordered;
     }
 
-    private final class HashEntry {
-
-        public String key;
-        public String value;
-
-        public HashEntry(String k, String v) {
-            this.key = k;
-            this.value = v;
-        }
+    /**
+     * @return indices of tests in ascending order of p values
+     */
+    protected int[] getOrder() {
+        return order;
     }
 
     protected String[] getOrdenedPvalues(){
+        String[] ordenedPvalues = new String[numberOfTests];
+        for (int i = 0; i < numberOfTests; i++) {
+            ordenedPvalues[i] = Double.toString(pValues[order[i]]);
+        }
         return ordenedPvalues;
     }
 
     protected String[] getOrdenedGOLabels(){
+        String[] ordenedGOLabels = new String[numberOfTests];
+        for (int i = 0; i < numberOfTests; i++) {
+            ordenedGOLabels[i] = Integer.toString(termIds[order[i]]);
+        }
         return ordenedGOLabels;
     }
 
-    abstract Map<String, String> getCorrectionMap();
+    /**
+     * @return ids of tested terms
+     */
+    public int[] getTermIds() {
+        return termIds;
+    }
+
+    /**
+     * @return adjusted p values; index i corresponds to index i of {@link #getTermIds()}
+     */
+    public double[] getCorrectedPValues() {
+        return correctedPValues;
+    }
+
+    /**
+     * @return map with term ids as keys and adjusted p values as values
+     */
+    public Map<String, String> getCorrectionMap() {
+        if (correctionMap == null) {
+            correctionMap = new HashMap<>();
+            for (int i = 0; i < numberOfTests; i++) {
+                correctionMap.put(Integer.toString(termIds[i]), Double.toString(correctedPValues[i]));
+            }
+        }
+        return correctionMap;
+    }
 
-    abstract public void calculate();
+    /**
+     * <p>Adjusts p values with {@link #adjust(double[], int[])}</p>
+     */
+    public void calculate() {
+        correctedPValues = adjust(pValues, order);
+        correctionMap = null;
+    }
 
 }
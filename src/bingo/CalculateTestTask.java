@@ -33,6 +33,7 @@ package bingo;
  * * Description: Interface for statistical tests.
  **/
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
@@ -40,6 +41,10 @@ import java.util.Map;
  * <ol>Changes:
  * <li>does not extends BingoTask class</li>
  * <li>added {@link #calculate()}</li>
+ * <li>added {@link #getTermIds()} and {@link #getPValues()}. P values are kept as primitive doubles</li>
+ * <li>added {@link #getNumberOfPrunedTerms()} and {@link #getTaroneFactor()}</li>
+ * <li>added {@link #getSmallX()}, {@link #getSmallN()}, {@link #getBigX()} and {@link #getBigN()}. Counts are kept
+ * in arrays parallel to {@link #getTermIds()}; maps are built from them only on request</li>
  * </ol>
  */
 
@@ -48,6 +53,93 @@ public abstract class CalculateTestTask {
     // implement for statistical tests
     public abstract Map<Integer, String> getTestMap();
 
+    /**
+     * @return ids of tested terms. Index i of this array corresponds to index i of {@link #getPValues()}
+     */
+    public int[] getTermIds() {
+        Map<Integer, String> testMap = getTestMap();
+        int[] termIds = new int[testMap.size()];
+        int i = 0;
+        for (Integer id : testMap.keySet()) {
+            termIds[i++] = id;
+        }
+        return termIds;
+    }
+
+    /**
+     * @return p values of tested terms. Index i of this array corresponds to index i of {@link #getTermIds()}
+     */
+    public double[] getPValues() {
+        Map<Integer, String> testMap = getTestMap();
+        double[] pValues = new double[testMap.size()];
+        int i = 0;
+        for (Object value : testMap.values()) {
+            pValues[i++] = Double.parseDouble(value.toString());
+        }
+        return pValues;
+    }
+
+    /**
+     * @return number of terms that were not tested because they can not reach significance
+     */
+    public int getNumberOfPrunedTerms() {
+        return 0;
+    }
+
+    /**
+     * @return correction factor K of {@link TaroneBonferroni}. Number of tested terms if terms are not pruned
+     */
+    public int getTaroneFactor() {
+        return getTermIds().length;
+    }
+
+    /**
+     * @return x of tested terms. Index i of this array corresponds to index i of {@link #getTermIds()}
+     */
+    int[] getSmallX() {
+        return values(getMapSmallX());
+    }
+
+    /**
+     * @return n of tested terms. Index i of this array corresponds to index i of {@link #getTermIds()}
+     */
+    int[] getSmallN() {
+        return values(getMapSmallN());
+    }
+
+    /**
+     * @return X of tested terms. Index i of this array corresponds to index i of {@link #getTermIds()}
+     */
+    int[] getBigX() {
+        return values(getMapBigX());
+    }
+
+    /**
+     * @return N of tested terms. Index i of this array corresponds to index i of {@link #getTermIds()}
+     */
+    int[] getBigN() {
+        return values(getMapBigN());
+    }
+
+    //values of map in the order of getTermIds()
+    private int[] values(Map<Integer, Integer> map) {
+        int[] termIds = getTermIds();
+        int[] values = new int[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            values[i] = map.get(termIds[i]);
+        }
+        return values;
+    }
+
+    //map term id -> value built from arrays parallel to getTermIds()
+    static Map<Integer, Integer> toMap(int[] termIds, int[] values) {
+        Map<Integer, Integer> map = new HashMap<>();
+        for (int i = 0; i < termIds.length; i++) {
+            map.put(termIds[i], values[i]);
+        }
+        return map;
+    }
+
     abstract Map<Integer, Integer> getMapSmallX();
 
     abstract Map<Integer, Integer> getMapSmallN();
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+/**
+ * <p>Immutable compressed set of non-negative integers in the style of Roaring bitmaps. Values are split into
+ * chunks of 2<sup>16</sup> by their high 16 bits. A chunk with few values keeps them as a sorted array of low
+ * 16 bits, a chunk with more than {@link #ARRAY_LIMIT} values keeps them as a bitmap of 1024 words.</p>
+ * <p>The set is used to store genes of ontology terms ({@link TermGeneIndex}). The number of common elements with
+ * a plain bitmap (the genes of a cluster) is counted by testing bits of array chunks and by popcount of ANDed words
+ * of bitmap chunks.</p>
+ *
+ * @version %I% %G%
+ */
+public final class CompressedBitSet {
+
+    /**
+     * the empty set
+     */
+    public static final CompressedBitSet EMPTY = new CompressedBitSet(new char[0], new char[0][], new long[0][], 0);
+
+    /**
+     * chunks with more values are stored as bitmaps. At this size array and bitmap take the same memory
+     */
+    static final int ARRAY_LIMIT = 4096;
+
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    //high 16 bits of chunks in ascending order
+    private final char[] keys;
+
+    //sorted low 16 bits of array chunks, null for bitmap chunks
+    private final char[][] arrays;
+
+    //bitmap chunks, null for array chunks
+    private final long[][] bitmaps;
+
+    private final int cardinality;
+
+    private CompressedBitSet(char[] keys, char[][] arrays, long[][] bitmaps, int cardinality) {
+        this.keys = keys;
+        this.arrays = arrays;
+        this.bitmaps = bitmaps;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * @param values distinct non-negative values in ascending order
+     * @param size number of values that are read from values
+     * @return set of the first size values
+     */
+    public static CompressedBitSet of(int[] values, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        int chunks = 1;
+        for (int i = 1; i < size; i++) {
+            if (values[i] <= values[i - 1]) {
+                throw new IllegalArgumentException("Values must be distinct and in ascending order");
+            }
+            if (values[i] >>> 16 != values[i - 1] >>> 16) {
+                chunks++;
+            }
+        }
+        if (values[0] < 0) {
+            throw new IllegalArgumentException("Values must not be negative: " + values[0]);
+        }
+        char[] keys = new char[chunks];
+        char[][] arrays = new char[chunks][];
+        long[][] bitmaps = new long[chunks][];
+        int start = 0;
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int key = values[start] >>> 16;
+            int end = start;
+            while (end < size && values[end] >>> 16 == key) {
+                end++;
+            }
+            keys[chunk] = (char) key;
+            if (end - start > ARRAY_LIMIT) {
+                long[] bitmap = new long[BITMAP_WORDS];
+                for (int i = start; i < end; i++) {
+                    bitmap[(values[i] & 0xFFFF) >>> 6] |= 1L << values[i];
+                }
+                bitmaps[chunk] = bitmap;
+            } else {
+                char[] array = new char[end - start];
+                for (int i = start; i < end; i++) {
+                    array[i - start] = (char) values[i];
+                }
+                arrays[chunk] = array;
+            }
+            start = end;
+        }
+        return new CompressedBitSet(keys, arrays, bitmaps, size);
+    }
+
+    /**
+     * @return number of values in the set
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @param value non-negative value
+     * @return true if the set contains value
+     */
+    public boolean contains(int value) {
+        int chunk = findChunk(value >>> 16);
+        if (chunk < 0) {
+            return false;
+        }
+        char low = (char) value;
+        if (arrays[chunk] != null) {
+            char[] array = arrays[chunk];
+            int lowIndex = 0;
+            int highIndex = array.length - 1;
+            while (lowIndex <= highIndex) {
+                int middle = (lowIndex + highIndex) >>> 1;
+                if (array[middle] < low) {
+                    lowIndex = middle + 1;
+                } else if (array[middle] > low) {
+                    highIndex = middle - 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return (bitmaps[chunk][low >>> 6] & (1L << low)) != 0;
+    }
+
+    /**
+     * <p>Number of values of the set whose bits are set in bitmap, i.e. popcount(this AND bitmap)</p>
+     * @param bitmap plain bitmap: value v is set if bit v % 64 of word v / 64 is set
+     * @return number of common values
+     */
+    public int andCardinality(long[] bitmap) {
+        int count = 0;
+        for (int chunk = 0; chunk < keys.length; chunk++) {
+            int offset = keys[chunk] << 10;
+            if (offset >= bitmap.length) {
+                break;
+            }
+            if (arrays[chunk] != null) {
+                for (char low : arrays[chunk]) {
+                    int word = offset + (low >>> 6);
+                    if (word < bitmap.length && (bitmap[word] & (1L << low)) != 0) {
+                        count++;
+                    }
+                }
+            } else {
+                long[] words = bitmaps[chunk];
+                int length = Math.min(BITMAP_WORDS, bitmap.length - offset);
+                for (int w = 0; w < length; w++) {
+                    count += Long.bitCount(words[w] & bitmap[offset + w]);
+                }
+            }
+        }
+        return count;
+    }
+
+    //index of the chunk with the given high bits, negative if there is no such chunk
+    private int findChunk(int key) {
+        int low = 0;
+        int high = keys.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else if (keys[middle] > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}
@@ -16,6 +16,8 @@ public enum Constants {
     OVERSTRING,
     BENJAMINI_HOCHBERG_FDR,
     BONFERRONI,
+    TARONE_BONFERRONI,
+    PERMUTATION_FDR,
     GENOME,
     CATEGORY,
     CATEGORY_BEFORE_CORRECTION,
@@ -29,6 +31,8 @@ public enum Constants {
             case OVERSTRING: return "Overrepresentation";
             case BENJAMINI_HOCHBERG_FDR: return "Benjamini & Hochberg False Discovery Rate (FDR) correction";
             case BONFERRONI: return "Bonferroni Family-Wise Error Rate (FWER) correction";
+            case TARONE_BONFERRONI: return "Tarone Bonferroni Family-Wise Error Rate (FWER) correction";
+            case PERMUTATION_FDR: return "Empirical False Discovery Rate (FDR) correction based on permutations";
             case GENOME: return "Use whole annotation as reference set";
             case CATEGORY: return "All categories";
             case CATEGORY_BEFORE_CORRECTION: return "Overrepresented categories before correction";
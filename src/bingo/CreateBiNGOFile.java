@@ -36,14 +36,13 @@ package bingo;
  * * p-values, term id and name, x, X, n, N.
  **/
 
-import ontology.Annotation;
 import ontology.Ontology;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.math.BigDecimal;
 import java.text.DateFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *
@@ -69,6 +68,18 @@ import java.util.*;
  * <li>deleted <code>String[] ordenKeysByPvalues(String[] labels)</code> and 
  * <code>String[] ordenKeysBySmallX(String[] labels)</code>
  * </li>
+ * <li>p values and corrected p values are read as primitive doubles ({@link #termIds}, {@link #pValues} and
+ * {@link #correctedPValues}). They are sorted and compared with alpha as numbers and formatted only when a line is
+ * written</li>
+ * <li>if {@link StatisticsDescriptor#getForkJoinPool()} is set classifications of genes and lines of the result
+ * file are prepared in parallel ({@link #createLine(int)}). They are merged and written in the same order as
+ * in serial mode</li>
+ * <li>header contains number of pruned untestable terms if pruning or Tarone correction is used</li>
+ * <li>terms are compared with alpha ({@link #isSignificant(int, double)}) before they are sorted, so only written
+ * terms are sorted and formatted. If {@link #topLimit} is set only the best terms are kept (bounded heap)</li>
+ * <li>x, n, X and N are read as int arrays parallel to {@link #termIds}</li>
+ * <li>classifications of genes are read from {@link TermGeneIndex#getNodeTerms(String)}, resolved once per run
+ * and shared by all clusters</li>
  * </li>
  * </ol>
  * </p>
@@ -76,29 +87,33 @@ import java.util.*;
 public final class CreateBiNGOFile {
 
     /**
-     * hashmap with key termID and value pvalue.
+     * ids of tested terms.
      */
-    private Map<Integer, String> testMap;
+    private int[] termIds;
     /**
-     * hashmap with key termID and value corrected pvalue.
+     * p values, parallel to {@link #termIds}.
      */
-    private Map<String, String> correctionMap;
+    private double[] pValues;
     /**
-     * hashmap with key termID and value x.
+     * corrected p values, parallel to {@link #termIds}. Null if there is no correction.
      */
-    private Map<Integer, Integer> mapSmallX;
+    private double[] correctedPValues;
     /**
-     * hashmap with key termID and value n.
+     * values of x, parallel to {@link #termIds}.
      */
-    private Map<Integer, Integer> mapSmallN;
+    private int[] smallX;
     /**
-     * integer with X.
+     * values of n, parallel to {@link #termIds}.
      */
-    private Map<Integer, Integer> mapBigX;
+    private int[] smallN;
     /**
-     * integer with N.
+     * values of X, parallel to {@link #termIds}.
      */
-    private Map<Integer, Integer> mapBigN;
+    private int[] bigX;
+    /**
+     * values of N, parallel to {@link #termIds}.
+     */
+    private int[] bigN;
     /**
      * String with alpha value.
      */
@@ -120,11 +135,6 @@ public final class CreateBiNGOFile {
     //added by me
     private String namespace;
     
-    /**
-     * the annotation (remapped, i.e. including all parent annotations)
-     */
-    private Annotation annotation;
-
     private Set<String> deleteCodes;
     /**
      * the ontology.
@@ -167,22 +177,42 @@ public final class CreateBiNGOFile {
 
     private Map<String, HashSet<String>> annotatedGenes;
 
-    private Map<String, HashSet<String>> alias;
+    /**
+     * genes of a term without genes in the test set (possible for underrepresentation)
+     */
+    private static final HashSet<String> NO_GENES = new HashSet<>();
+
+    private TermGeneIndex termGeneIndex;
+
+    /**
+     * pool used to prepare output in parallel. If null output is prepared on the calling thread.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * number of terms pruned before testing. Negative if pruning was not used.
+     */
+    private int prunedTerms = -1;
+
+    /**
+     * the largest number of written terms. 0 if all significant terms are written.
+     */
+    private int topLimit;
 
 
     public CreateBiNGOFile(CalculateTestTask test, CalculateCorrectionTask correctionTest, AnnotationParser parser,
                            StatisticsDescriptor descriptor, Set<String> selectedNodes, Set<String> noClassificationsSet,
                            String outputDir, String clusterName, String category) {
 
-        this.testMap = test.getTestMap();
+        this.termIds = test.getTermIds();
+        this.pValues = test.getPValues();
         if (correctionTest != null)
-            this.correctionMap = correctionTest.getCorrectionMap();
-        this.mapSmallX = test.getMapSmallX();
-        this.mapSmallN = test.getMapSmallN();
-        this.mapBigX = test.getMapBigX();
-        this.mapBigN = test.getMapBigN();
+            this.correctedPValues = correctionTest.getCorrectedPValues();
+        this.smallX = test.getSmallX();
+        this.smallN = test.getSmallN();
+        this.bigX = test.getBigX();
+        this.bigN = test.getBigN();
         this.alphaString = descriptor.getpValue();
-        this.annotation = parser.getAnnotation();
         this.ontology = parser.getOntology();
         this.annotationFile = parser.getAnnotationFile();
         this.ontologyFile = parser.getOntologyFile();
@@ -196,39 +226,55 @@ public final class CreateBiNGOFile {
         this.selectedCanonicalNameVector = selectedNodes;
         this.noClassificationsSet = noClassificationsSet;
         this.annotatedGenes = new HashMap<>();
-        this.alias = parser.getAlias();
+        this.termGeneIndex = parser.getTermGeneIndex();
         this.deleteCodes = parser.getDeleteCodes();
         this.ontologyType = parser.getOntologyType();
         this.namespace = parser.getNamespace();
+        this.pool = descriptor.getForkJoinPool();
+        if (descriptor.isPruning() || correctionString.equals(Constants.TARONE_BONFERRONI.getConstant())) {
+            this.prunedTerms = test.getNumberOfPrunedTerms();
+        }
+        this.topLimit = descriptor.getTopLimit();
     }
 
 
     //associates ontology term ID with genes / proteins
     //this is part of BiNGO makeFile() method
     private void loadAnnotatedGenes() {
+        final String[] names = new String[selectedCanonicalNameVector.size()];
         Iterator<String> it = selectedCanonicalNameVector.iterator();
-        while (it.hasNext()) {
-            String name = it.next() + "";
-            HashSet tmp = alias.get(name);
-            if (tmp != null) {
-                Iterator it2 = tmp.iterator();
-                while (it2.hasNext()) {
-                    int[] nodeClassifications = annotation.getClassifications(it2.next() + "");
-                    for (int k = 0; k < nodeClassifications.length; k++) {
-                        String cat = Integer.toString(nodeClassifications[k]);
-                        if (!annotatedGenes.containsKey(cat)) {
-                            HashSet<String> catset = new HashSet<>();
-                            annotatedGenes.put(cat, catset);
-                        }
-                        annotatedGenes.get(cat).add(name);
-                    }
+        for (int i = 0; it.hasNext(); i++) {
+            names[i] = it.next() + "";
+        }
+        //classifications are looked up in parallel, genes are added to categories in the order of names
+        final int[][] classifications = new int[names.length][];
+        RangeTask.forEach(pool, names.length, i -> classifications[i] = getClassifications(names[i]));
+
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
+            for (int k = 0; k < classifications[i].length; k++) {
+                String cat = Integer.toString(classifications[i][k]);
+                if (!annotatedGenes.containsKey(cat)) {
+                    HashSet<String> catset = new HashSet<>();
+                    annotatedGenes.put(cat, catset);
                 }
+                annotatedGenes.get(cat).add(name);
             }
 
         }
 
     }
 
+    //ids of terms of gene / protein name, resolved once per run by the term gene index
+    private int[] getClassifications(String name) {
+        int[] terms = termGeneIndex.getNodeTerms(name);
+        int[] classifications = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            classifications[i] = ontology.getTermId(terms[i]);
+        }
+        return classifications;
+    }
+
     //writes info about enrichment analysis
     //this is part of BiNGO makeFile() method
     //added info about namespace
@@ -252,6 +298,9 @@ public final class CreateBiNGOFile {
         output.println("Selected significance level : " + alphaString);
         output.println("Testing option : " + clusterVsString);
         output.println("Representation: " + overUnderString);
+        if (prunedTerms >= 0) {
+            output.println("Pruned untestable terms : " + prunedTerms);
+        }
 
         output.println("The following " + noClassificationsSet.size() + " entities have no annotations:");
         output.println(noClassificationsSet.toString().replace("[", "")
@@ -271,69 +320,23 @@ public final class CreateBiNGOFile {
         File results = new File(dirName, fileName);
         try (PrintWriter writer = new PrintWriter(results)) {
             writeHeaderToFile(writer);
-            List<Pair<Integer>> pairs = new ArrayList<>();
-            for (Map.Entry<Integer, String> entry : testMap.entrySet()) {
-                pairs.add(new Pair<>(entry.getKey(), entry.getValue()));
-            }
-
-            pairs.sort(new Comparator<Pair<Integer>>() {
-                @Override
-                public int compare(Pair<Integer> o1, Pair<Integer> o2) {
-                    return new BigDecimal(o1.getValue()).compareTo(new BigDecimal(o2.getValue()));
-                }
-
-            });
-
-            Iterator<Pair<Integer>> it = pairs.iterator();
-
-            while (it.hasNext()) {
-                StringBuilder line = new StringBuilder();
-                Pair<Integer> pair = it.next();
-                Integer key = pair.getKey();
-                String value = pair.getValue();
-                String correctedPValue;
-
-                if (catString.equals(Constants.CATEGORY_BEFORE_CORRECTION.getConstant())) {
-                    if ((new BigDecimal(testMap.get(key)))
-                            .compareTo(new BigDecimal(alphaString)) < 0) {
-                        //if there is no correction corrected p value is -
-                        correctedPValue = correctionMap == null ? "-" : String.format("%6.3e",
-                                Double.parseDouble(correctionMap.get(Integer.toString(key))));
-
-                        line.append(key).append("\t").append(String.format("%6.3e", Double.parseDouble(value)))
-                                .append("\t").append(correctedPValue)
-                                .append("\t").append(mapSmallX.get(key)).append("\t").append(mapSmallN.get(key))
-                                .append("\t").append(mapBigX.get(key)).append("\t").append(mapBigN.get(key))
-                                .append("\t").append(ontology.getTerm(key).getName())
-                                .append("\t").append(annotatedGenes.get(Integer.toString(key)).toString().
-                                replace("[", "").replace("]", "")
-                                .replace(", ", "|"));
-                    }
-
-                } else {
-                    //if there is no correction ranks according to p value, otherwise according to corrected p value
-                    correctedPValue = correctionMap == null ? "-" : String.format("%6.3e",
-                            Double.parseDouble(correctionMap.get(Integer.toString(key))));
-                    String comp = correctionMap == null ? testMap.get(key) : correctionMap.get(Integer.toString(key));
-                    if ((new BigDecimal(comp))
-                            .compareTo(new BigDecimal(alphaString)) < 0) {
-
-                        line.append(key).append("\t").append(String.format("%6.3e", Double.parseDouble(value)))
-                                .append("\t").append(correctedPValue)
-                                .append("\t").append(mapSmallX.get(key)).append("\t").append(mapSmallN.get(key))
-                                .append("\t").append(mapBigX.get(key)).append("\t").append(mapBigN.get(key))
-                                .append("\t").append(ontology.getTerm(key).getName())
-                                .append("\t").append(annotatedGenes.get(Integer.toString(key)).toString()
-                                .replace("[", "").replace("]", "").
-                                        replace(", ", "|"));
-
-                    }
-
+            double alpha = Double.parseDouble(alphaString);
+            int[] significant = new int[termIds.length];
+            int numberOfSignificant = 0;
+            for (int i = 0; i < termIds.length; i++) {
+                if (isSignificant(i, alpha)) {
+                    significant[numberOfSignificant++] = i;
                 }
-                //don't write empty lines
-                if (line.toString().length() != 0)
-                    writer.println(line.toString());
-
+            }
+            significant = Arrays.copyOf(significant, numberOfSignificant);
+            final int[] order = topLimit > 0 ? PValueOrder.smallest(pValues, significant, topLimit)
+                    : PValueOrder.ascending(pValues, significant);
+            //lines are prepared in parallel and written in the order of p values
+            final String[] lines = new String[order.length];
+            RangeTask.forEach(pool, order.length, i -> lines[i] = createLine(order[i]));
+
+            for (String line : lines) {
+                writer.println(line);
             }
 
         } catch (IOException ex) {
@@ -341,4 +344,40 @@ public final class CreateBiNGOFile {
         }
     }
 
+    /**
+     * @param index index of the term in {@link #termIds}
+     * @param alpha significance level
+     * @return true if the term is written to the result file
+     */
+    private boolean isSignificant(int index, double alpha) {
+        if (catString.equals(Constants.CATEGORY_BEFORE_CORRECTION.getConstant())) {
+            return pValues[index] < alpha;
+        }
+        //if there is no correction ranks according to p value, otherwise according to corrected p value
+        double comp = correctedPValues == null ? pValues[index] : correctedPValues[index];
+        return comp < alpha;
+    }
+
+    /**
+     * @param index index of the term in {@link #termIds}
+     * @return line with results for the term
+     */
+    private String createLine(int index) {
+        StringBuilder line = new StringBuilder();
+        int key = termIds[index];
+        //if there is no correction corrected p value is -
+        String correctedPValue = correctedPValues == null ? "-" : String.format("%6.3e",
+                correctedPValues[index]);
+
+        line.append(key).append("\t").append(String.format("%6.3e", pValues[index]))
+                .append("\t").append(correctedPValue)
+                .append("\t").append(smallX[index]).append("\t").append(smallN[index])
+                .append("\t").append(bigX[index]).append("\t").append(bigN[index])
+                .append("\t").append(ontology.getTerm(key).getName())
+                .append("\t").append(annotatedGenes.getOrDefault(Integer.toString(key), NO_GENES).toString()
+                .replace("[", "").replace("]", "")
+                .replace(", ", "|"));
+        return line.toString();
+    }
+
 }
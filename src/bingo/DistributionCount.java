@@ -9,7 +9,6 @@
 
 package bingo;
 
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -38,9 +37,12 @@ public abstract class DistributionCount extends CalculateTestTask {
 	abstract void countSmallX();
 
 	/**
-	 * method that counts for small n and small x.
+	 * method that counts for small n and small x in one pass over nodes.
+	 * counts[i] is increased for every node classified to the term with
+	 * dense index i (see {@link ontology.Ontology#getTermIndex(int)}).
+	 * @return number of classified nodes (big N or big X)
 	 */
-	abstract Map<Integer, Integer> count(Set<String> nodes);
+	abstract int count(Set<String> nodes, int[] counts);
 
 	/**
 	 * counts big N. unclassified nodes are not counted ; no correction for
@@ -54,4 +56,32 @@ public abstract class DistributionCount extends CalculateTestTask {
 	 */
 	abstract void countBigX();
 
+	/**
+	 * dense indices of tested terms, parallel to {@link #getTermIds()}.
+	 */
+	abstract int[] getTermIndices();
+
+	/**
+	 * dense term indices of classifications of reference nodes in the
+	 * iteration order of the reference set.
+	 */
+	abstract int[][] getReferenceClassifications();
+
+	/**
+	 * small n of every term of the ontology, indexed by dense term index.
+	 */
+	abstract int[] getSmallNCounts();
+
+	/**
+	 * genes of terms shared by all clusters. Null if classifications of
+	 * nodes are counted.
+	 */
+	abstract TermGeneIndex getTermGeneIndex();
+
+	/**
+	 * bitmap of classified reference genes of {@link #getTermGeneIndex()}.
+	 * Null if there is no index.
+	 */
+	abstract long[] getReferenceGenes();
+
 }
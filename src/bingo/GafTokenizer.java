@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <p>Tokenizer of tab delimited lines (GAF) over the bytes of a {@link ByteBuffer}, either a memory mapped range
+ * of a file or a block of an inflated one. Offsets of the columns of a line are found in one pass; columns are
+ * compared, parsed to ints and interned ({@link SymbolTable#intern(ByteBuffer, int, int, boolean)}) in place,
+ * without creating strings.</p>
+ * <p>Lines end with <code>\n</code>, <code>\r</code> or <code>\r\n</code> and columns are counted the way
+ * <code>String.split("\t")</code> counts them: trailing empty columns are dropped. The byte level methods hold only
+ * for lines of ASCII characters ({@link #isAscii()}); other lines are decoded ({@link #getLine()}) and handled as
+ * strings. If the default charset is not ASCII compatible or the default locale does not upper case ASCII letters
+ * to ASCII letters ({@link #isSupported()}), all lines must be handled as strings.</p>
+ *
+ * @version %I% %G%
+ */
+final class GafTokenizer {
+
+    private static final boolean SUPPORTED = isAsciiCompatible(Charset.defaultCharset())
+            && "abcdefghijklmnopqrstuvwxyz".toUpperCase(Locale.getDefault()).equals("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+
+    private final ByteBuffer buffer;
+    private final int end;
+    private int position;
+
+    private int lineStart;
+    private int lineEnd;
+    private boolean ascii;
+    //start of column k at 2k, its end at 2k + 1
+    private int[] columns = new int[64];
+    private int numberOfColumns;
+
+    /**
+     * @param buffer bytes from the position to the limit of the buffer are tokenized
+     */
+    GafTokenizer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.position = buffer.position();
+        this.end = buffer.limit();
+    }
+
+    /**
+     * @return true if lines of ASCII characters can be tokenized as bytes
+     */
+    static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    private static boolean isAsciiCompatible(Charset charset) {
+        byte[] expected = new byte[128];
+        char[] chars = new char[128];
+        for (int c = 0; c < 128; c++) {
+            expected[c] = (byte) c;
+            chars[c] = (char) c;
+        }
+        return Arrays.equals(new String(chars).getBytes(charset), expected);
+    }
+
+    /**
+     * <p>Moves to the next line and finds its columns</p>
+     * @return false if there are no more lines
+     */
+    boolean nextLine() {
+        if (position >= end) {
+            return false;
+        }
+        lineStart = position;
+        ascii = true;
+        numberOfColumns = 0;
+        int columnStart = position;
+        int lastNonEmpty = -1;
+        int columnCount = 0;
+        int p = position;
+        while (p < end) {
+            byte b = buffer.get(p);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            if (b == '\t') {
+                lastNonEmpty = setColumn(columnCount++, columnStart, p, lastNonEmpty);
+                columnStart = p + 1;
+            } else if (b < 0) {
+                ascii = false;
+            }
+            p++;
+        }
+        lineEnd = p;
+        lastNonEmpty = setColumn(columnCount, columnStart, p, lastNonEmpty);
+        //an empty line is one empty column, like "".split("\t")
+        numberOfColumns = lineEnd == lineStart ? 1 : lastNonEmpty + 1;
+        if (p < end && buffer.get(p) == '\r' && p + 1 < end && buffer.get(p + 1) == '\n') {
+            p++;
+        }
+        position = p + 1;
+        return true;
+    }
+
+    private int setColumn(int column, int start, int stop, int lastNonEmpty) {
+        if (2 * column + 1 >= columns.length) {
+            columns = Arrays.copyOf(columns, 2 * columns.length);
+        }
+        columns[2 * column] = start;
+        columns[2 * column + 1] = stop;
+        return stop > start ? column : lastNonEmpty;
+    }
+
+    /**
+     * @return true if the line has only ASCII characters
+     */
+    boolean isAscii() {
+        return ascii;
+    }
+
+    /**
+     * @return true if the line starts with <code>!</code>
+     */
+    boolean isComment() {
+        return lineEnd > lineStart && buffer.get(lineStart) == '!';
+    }
+
+    /**
+     * @return number of columns, trailing empty columns excluded
+     */
+    int getNumberOfColumns() {
+        return numberOfColumns;
+    }
+
+    /**
+     * @param column index of a column
+     * @return offset of the first byte of the column
+     */
+    int getStart(int column) {
+        return columns[2 * column];
+    }
+
+    /**
+     * @param column index of a column
+     * @return offset after the last byte of the column
+     */
+    int getEnd(int column) {
+        return columns[2 * column + 1];
+    }
+
+    /**
+     * @param column index of a column
+     * @return offset of the first byte of the column after leading white space, like <code>String.trim()</code>
+     */
+    int getTrimmedStart(int column) {
+        int start = getStart(column);
+        int stop = getEnd(column);
+        while (start < stop && (buffer.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * @param column index of a column
+     * @return offset after the last byte of the column before trailing white space, like <code>String.trim()</code>
+     */
+    int getTrimmedEnd(int column) {
+        int start = getTrimmedStart(column);
+        int stop = getEnd(column);
+        while (stop > start && (buffer.get(stop - 1) & 0xFF) <= ' ') {
+            stop--;
+        }
+        return stop;
+    }
+
+    /**
+     * @return the bytes of the lines
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return byte at an offset
+     */
+    byte get(int offset) {
+        return buffer.get(offset);
+    }
+
+    /**
+     * @return the line decoded with the default charset, without the line break
+     */
+    String getLine() {
+        ByteBuffer line = buffer.duplicate();
+        line.limit(lineEnd);
+        line.position(lineStart);
+        return Charset.defaultCharset().decode(line).toString();
+    }
+
+    /**
+     * @param start offset of the first byte
+     * @param stop offset after the last byte
+     * @param code ASCII string in upper case
+     * @return true if the upper cased bytes equal the code
+     */
+    boolean equalsUpperCase(int start, int stop, byte[] code) {
+        if (stop - start != code.length) {
+            return false;
+        }
+        for (int i = 0; i < code.length; i++) {
+            if (toUpperCase(buffer.get(start + i)) != code[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param start offset of the first byte
+     * @param stop offset after the last byte
+     * @return the bytes as a decimal int, like <code>Integer.parseInt</code>, or -1 if they are not one
+     */
+    int parseInt(int start, int stop) {
+        if (start >= stop) {
+            return -1;
+        }
+        boolean negative = false;
+        byte first = buffer.get(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+            if (start == stop) {
+                return -1;
+            }
+        }
+        long value = 0;
+        for (int p = start; p < stop; p++) {
+            int digit = buffer.get(p) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = 10 * value + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return -1;
+            }
+        }
+        if (negative) {
+            value = -value;
+        }
+        return value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    static byte toUpperCase(byte b) {
+        return b >= 'a' && b <= 'z' ? (byte) (b - ('a' - 'A')) : b;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>Input stream of a gzip compressed file that is inflated on a separate thread. The thread reads the file
+ * through a large buffer, inflates it into blocks of {@link #BLOCK_SIZE} bytes and hands the blocks to the reader
+ * through a bounded queue, so parsing of one block overlaps with inflating of the next ones.</p>
+ * <p>Annotation files can be read through {@link #newBufferedReader(String)}, which inflates files ending with
+ * <code>.gz</code> and reads other files as they are.</p>
+ *
+ * @version %I% %G%
+ */
+public final class GzipPipeInputStream extends InputStream {
+
+    /**
+     * size of inflated blocks handed to the reader
+     */
+    private static final int BLOCK_SIZE = 1 << 20;
+    /**
+     * size of the buffer of compressed input
+     */
+    private static final int INPUT_BUFFER_SIZE = 1 << 18;
+    /**
+     * number of inflated blocks waiting for the reader
+     */
+    private static final int QUEUE_CAPACITY = 4;
+    /**
+     * empty block marking the end of the file
+     */
+    private static final byte[] END = new byte[0];
+
+    private final String filename;
+    private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread inflater;
+    /**
+     * failure of the inflating thread, reported to the reader after the last good block
+     */
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    private byte[] block = null;
+    private int position = 0;
+    private boolean finished = false;
+
+    /**
+     * <p>Opens the file and starts inflating it</p>
+     * @param filename path to gzip compressed file
+     * @throws IOException if the file can not be opened or is not in gzip format
+     */
+    public GzipPipeInputStream(String filename) throws IOException {
+        this.filename = filename;
+        FileInputStream file = new FileInputStream(filename);
+        GZIPInputStream in;
+        try {
+            in = new GZIPInputStream(file, INPUT_BUFFER_SIZE);
+        } catch (IOException ex) {
+            file.close();
+            throw ex;
+        }
+        inflater = new Thread(() -> inflate(in), "gunzip " + filename);
+        inflater.setDaemon(true);
+        inflater.start();
+    }
+
+    /**
+     * <p>Reader of an annotation file: files ending with <code>.gz</code> are inflated on a separate thread,
+     * other files are read as they are</p>
+     * @param filename path to file
+     * @return reader of lines of the file
+     * @throws IOException if the file can not be opened
+     */
+    public static BufferedReader newBufferedReader(String filename) throws IOException {
+        if (filename.endsWith(".gz")) {
+            return new BufferedReader(new InputStreamReader(new GzipPipeInputStream(filename)), 1 << 16);
+        }
+        return new BufferedReader(new FileReader(filename));
+    }
+
+    /**
+     * <p>Inflates the file into blocks. The end of the file is always queued unless the stream was closed, so the
+     * reader never waits for a thread that failed; any failure is reported to the reader as an IOException.</p>
+     */
+    private void inflate(GZIPInputStream in) {
+        try (InputStream input = in) {
+            while (!closed) {
+                byte[] buffer = new byte[BLOCK_SIZE];
+                int length = 0;
+                int n;
+                while (length < BLOCK_SIZE && (n = input.read(buffer, length, BLOCK_SIZE - length)) != -1) {
+                    length += n;
+                }
+                if (length == 0) {
+                    break;
+                }
+                if (length < BLOCK_SIZE) {
+                    byte[] last = new byte[length];
+                    System.arraycopy(buffer, 0, last, 0, length);
+                    buffer = last;
+                }
+                if (!put(buffer)) {
+                    return;
+                }
+            }
+        } catch (Throwable ex) {
+            failure = new IOException("Unable to inflate " + filename + ": " + ex, ex);
+        } finally {
+            if (!closed) {
+                put(END);
+            }
+        }
+    }
+
+    /**
+     * @return false if the stream was closed or the thread interrupted before the block was queued
+     */
+    private boolean put(byte[] buffer) {
+        try {
+            while (!closed) {
+                if (blocks.offer(buffer, 100, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * @return false at the end of the file
+     */
+    private boolean nextBlock() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (!finished && (block == null || position == block.length)) {
+            try {
+                block = blocks.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while inflating " + filename);
+            }
+            position = 0;
+            if (block == END) {
+                finished = true;
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        }
+        return !finished;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        int n = Math.min(len, block.length - position);
+        System.arraycopy(block, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block == null || finished ? 0 : block.length - position;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            blocks.clear();
+            inflater.interrupt();
+        }
+    }
+}
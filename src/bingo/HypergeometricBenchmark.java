@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import cern.jet.stat.Gamma;
+
+import java.util.Random;
+
+/**
+ * <p>Standalone benchmark that compares the hypergeometric test computed with Colt
+ * ({@link HypergeometricDistribution} without table) against the test that reads logarithms of factorials
+ * from {@link LogFactorial}. Random (x, X, n, N) quadruples that resemble GO enrichment of clusters against
+ * the human background are used.</p>
+ * <p>Both are also compared with the direct summation in which every summand is computed from logarithms of
+ * factorials, i.e. the tail summation used before recurrence between successive summands was introduced.</p>
+ * <p>Usage: <code>java -cp DiNGO.jar bingo.HypergeometricBenchmark [N] [number of tests] [seed]</code></p>
+ *
+ * @version %I% %G%
+ */
+public final class HypergeometricBenchmark {
+
+    private HypergeometricBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int bigN = args.length > 0 ? Integer.parseInt(args[0]) : 17108;
+        int numberOfTests = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+
+        int[][] quadruples = createQuadruples(bigN, numberOfTests, seed);
+
+        long start = System.nanoTime();
+        LogFactorial logFactorial = new LogFactorial(bigN);
+        long tableTime = System.nanoTime() - start;
+
+        //warm up all paths before measuring
+        runDirect(quadruples);
+        run(quadruples, null);
+        run(quadruples, logFactorial);
+
+        start = System.nanoTime();
+        double[] direct = runDirect(quadruples);
+        long directTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double[] colt = run(quadruples, null);
+        long coltTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        double[] table = run(quadruples, logFactorial);
+        long lookupTime = System.nanoTime() - start;
+
+        double maxRelativeDifference = maxRelativeDifference(colt, table);
+        double maxDirectDifference = maxRelativeDifference(direct, table);
+
+        System.out.printf("%-30s%d%n", "N:", bigN);
+        System.out.printf("%-30s%d%n", "Number of tests:", numberOfTests);
+        System.out.printf("%-30s%.3f ms%n", "Table construction:", tableTime / 1e6);
+        System.out.printf("%-30s%.3f ms%n", "Direct summation:", directTime / 1e6);
+        System.out.printf("%-30s%.3f ms%n", "Colt logGamma:", coltTime / 1e6);
+        System.out.printf("%-30s%.3f ms%n", "Log-factorial table:", lookupTime / 1e6);
+        System.out.printf("%-30s%.2f%n", "Speed-up:", (double) coltTime / lookupTime);
+        System.out.printf("%-30s%.3e%n", "Max relative difference:", maxRelativeDifference);
+        System.out.printf("%-30s%.2f%n", "Speed-up vs direct:", (double) directTime / lookupTime);
+        System.out.printf("%-30s%.3e%n", "Max difference vs direct:", maxDirectDifference);
+    }
+
+    private static double maxRelativeDifference(double[] expected, double[] actual) {
+        double max = 0;
+        for (int i = 0; i < expected.length; i++) {
+            double diff = Math.abs(expected[i] - actual[i]);
+            if (expected[i] != 0) {
+                diff /= Math.abs(expected[i]);
+            }
+            max = Math.max(max, diff);
+        }
+        return max;
+    }
+
+    //x out of X genes in a cluster belong to a term shared by n out of N genes
+    private static int[][] createQuadruples(int bigN, int numberOfTests, long seed) {
+        Random random = new Random(seed);
+        int[][] quadruples = new int[numberOfTests][];
+        for (int i = 0; i < numberOfTests; i++) {
+            int bigX = 1 + random.nextInt(Math.min(bigN, 1000));
+            //most terms are small, some are close to the root
+            int n = 1 + (random.nextInt(10) == 0 ? random.nextInt(bigN) : random.nextInt(Math.min(bigN, 200)));
+            int x = 1 + random.nextInt(Math.min(bigX, n));
+            quadruples[i] = new int[]{x, bigX, n, bigN};
+        }
+        return quadruples;
+    }
+
+    private static double[] run(int[][] quadruples, LogFactorial logFactorial) {
+        double[] result = new double[quadruples.length];
+        for (int i = 0; i < quadruples.length; i++) {
+            int[] q = quadruples[i];
+            IDistribution distribution = new HypergeometricDistribution(q[0], q[1], q[2], q[3], true, logFactorial);
+            result[i] = distribution.calculateProbability();
+        }
+        return result;
+    }
+
+    //over-representation, every summand computed by Colt
+    private static double[] runDirect(int[][] quadruples) {
+        double[] result = new double[quadruples.length];
+        for (int k = 0; k < quadruples.length; k++) {
+            int x = quadruples[k][0];
+            int bigX = quadruples[k][1];
+            int n = quadruples[k][2];
+            int bigN = quadruples[k][3];
+            int mode = (bigX + 1) * (n + 1) / (bigN + 2);
+            double sum = 0;
+            if (x >= mode) {
+                for (int i = x; (bigN - n >= bigX - i) && (i <= Math.min(bigX, n)); i++) {
+                    sum += Math.exp(logPdf(i, bigX, n, bigN));
+                }
+            } else {
+                for (int i = x - 1; (bigN - n >= bigX - i) && (i >= 0); i--) {
+                    sum += Math.exp(logPdf(i, bigX, n, bigN));
+                }
+                sum = 1 - sum;
+            }
+            result[k] = sum;
+        }
+        return result;
+    }
+
+    private static double logPdf(int i, int bigX, int n, int bigN) {
+        return Gamma.logGamma(n + 1) - Gamma.logGamma(i + 1) - Gamma.logGamma(n - i + 1) + Gamma.logGamma(bigN - n + 1)
+                - Gamma.logGamma(bigX - i + 1) - Gamma.logGamma(bigN - n - bigX + i + 1) - Gamma.logGamma(bigN + 1)
+                + Gamma.logGamma(bigX + 1) + Gamma.logGamma(bigN - bigX + 1);
+    }
+}
@@ -44,6 +44,15 @@ import cern.jet.stat.Gamma;
  *  <li>class implements {@link IDistribution} interface</li>
  *  <li>method {@link #calculateHypergDistr()} is private</li>
  *  <li>new constructor {@link #HypergeometricDistribution(int, int, int, int, boolean)}</li>
+ *  <li>new constructor {@link #HypergeometricDistribution(int, int, int, int, boolean, LogFactorial)}. Logarithms
+ *  of factorials are read from shared {@link LogFactorial} table instead of being computed by Colt for every
+ *  summand</li>
+ *  <li>{@link #calculateHypergDistr()} returns primitive double. Text is produced only by
+ *  {@link IDistribution#calculateDistribution()}</li>
+ *  <li>tails are summed by {@link #upperTail(int)} and {@link #lowerTail(int)}. Only the first probability is
+ *  computed in log space, every next one is obtained from the previous one by the ratio of successive
+ *  probabilities. Summation stops when the rest of the tail can not change the sum</li>
+ *  <li>new method {@link #calculateMinimumProbability()}</li>
  * </ol>
  * 
  * -------------------------------
@@ -81,6 +90,10 @@ public class HypergeometricDistribution implements IDistribution{
      */
 
     private int bigN;
+    /**
+     * table of ln(k!) shared by all tests. If null logarithms are computed by Colt.
+     */
+    private LogFactorial logFactorial;
     /**
      * scale of result.
      */
@@ -109,6 +122,21 @@ public class HypergeometricDistribution implements IDistribution{
         this(x, bigX, n, bigN);
         this.isOver = isOver;
     }
+
+    /**
+     * constructor that uses precomputed logarithms of factorials.
+     *
+     * @param x number of genes with GO category B in cluster A.
+     * @param bigX number of genes in cluster A.
+     * @param n number of genes with GO category B in the whole genome.
+     * @param bigN number of genes in whole genome.
+     * @param isOver true for over-representation, false for under-representation
+     * @param logFactorial shared table of ln(k!). If null Colt is used.
+     */
+    public HypergeometricDistribution(int x, int bigX, int n, int bigN, boolean isOver, LogFactorial logFactorial) {
+        this(x, bigX, n, bigN, isOver);
+        this.logFactorial = logFactorial;
+    }
     
     /*--------------------------------------------------------------
     METHODS.
@@ -117,9 +145,9 @@ public class HypergeometricDistribution implements IDistribution{
      * method that conducts the calculations. P(x or more |X,N,n) = 1 -
      * sum{[C(n,i)*C(N-n, X-i)] / C(N,X)} for i=0 ... x-1
      *
-     * @return String with result of calculations.
+     * @return result of calculations.
      */
-    private String calculateHypergDistr() {
+    private double calculateHypergDistr() {
         if (bigN >= 2) {
             double sum = 0;
             //mode of distribution, integer division (returns integer <= double result)!
@@ -128,34 +156,129 @@ public class HypergeometricDistribution implements IDistribution{
             int newX = (isOver == false) ? x + 1 : x;
            
             if (newX >= mode) {
-                i = newX;
-                while ((bigN - n >= bigX - i) && (i <= Math.min(bigX, n))) {
-                    double pdfi = Math.exp(Gamma.logGamma(n + 1) - Gamma.logGamma(i + 1) - Gamma.logGamma(n - i + 1) + Gamma.logGamma(bigN - n + 1) - Gamma.logGamma(bigX - i + 1) - Gamma.logGamma(bigN - n - bigX + i + 1) - Gamma.logGamma(bigN + 1) + Gamma.logGamma(bigX + 1) + Gamma.logGamma(bigN - bigX + 1));
-                    sum = sum + pdfi;
-                    i++;
-                }
+                sum = upperTail(newX);
                 if(isOver == false) sum = 1 - sum;
             } else {
-                i = newX - 1;
-                while ((bigN - n >= bigX - i) && (i >= 0)) {
-                    double pdfi = Math.exp(Gamma.logGamma(n + 1) - Gamma.logGamma(i + 1) - Gamma.logGamma(n - i + 1) + Gamma.logGamma(bigN - n + 1) - Gamma.logGamma(bigX - i + 1) - Gamma.logGamma(bigN - n - bigX + i + 1) - Gamma.logGamma(bigN + 1) + Gamma.logGamma(bigX + 1) + Gamma.logGamma(bigN - bigX + 1));
-                    sum = sum + pdfi;
-                    i--;
-                }
+                sum = lowerTail(newX - 1);
                 if(isOver == true) sum = 1 - sum;
             }
-            return (new Double(sum)).toString();
+            return sum;
         } else {
-            return (new Double(1)).toString();
+            return 1;
         }
     }
     
+    /**
+     * logarithm of the hypergeometric probability P(i |X,N,n) =
+     * C(n,i)*C(N-n, X-i) / C(N,X)
+     *
+     * @param i number of successes in sample
+     * @return ln P(i |X,N,n)
+     */
+    private double logPdf(int i) {
+        if (logFactorial == null) {
+            return Gamma.logGamma(n + 1) - Gamma.logGamma(i + 1) - Gamma.logGamma(n - i + 1) + Gamma.logGamma(bigN - n + 1) - Gamma.logGamma(bigX - i + 1) - Gamma.logGamma(bigN - n - bigX + i + 1) - Gamma.logGamma(bigN + 1) + Gamma.logGamma(bigX + 1) + Gamma.logGamma(bigN - bigX + 1);
+        }
+        return logFactorial.value(n) - logFactorial.value(i) - logFactorial.value(n - i) + logFactorial.value(bigN - n) - logFactorial.value(bigX - i) - logFactorial.value(bigN - n - bigX + i) - logFactorial.value(bigN) + logFactorial.value(bigX) + logFactorial.value(bigN - bigX);
+    }
+
+    /**
+     * sum of P(i |X,N,n) for i = start ... min(X, n). start must not be below the mode, so the summands
+     * decrease.
+     *
+     * @param start first summand
+     * @return P(start or more |X,N,n)
+     */
+    private double upperTail(int start) {
+        int i = start;
+        int last = Math.min(bigX, n);
+        if (bigN - n < bigX - i || i > last) {
+            return 0;
+        }
+        double pdfi = Math.exp(logPdf(i));
+        double sum = 0;
+        while (true) {
+            sum = sum + pdfi;
+            if (i == last) {
+                return sum;
+            }
+            // P(i + 1) / P(i)
+            double ratio = (double) (n - i) * (bigX - i) / ((double) (i + 1) * (bigN - n - bigX + i + 1));
+            pdfi = pdfi * ratio;
+            i++;
+            if (isNegligible(pdfi, ratio, sum)) {
+                return sum;
+            }
+        }
+    }
+
+    /**
+     * sum of P(i |X,N,n) for i = start ... max(0, X - (N - n)). start must be below the mode, so the summands
+     * decrease.
+     *
+     * @param start first summand
+     * @return P(start or less |X,N,n)
+     */
+    private double lowerTail(int start) {
+        int i = start;
+        int last = Math.max(0, bigX - (bigN - n));
+        if (i < last) {
+            return 0;
+        }
+        double pdfi = Math.exp(logPdf(i));
+        double sum = 0;
+        while (true) {
+            sum = sum + pdfi;
+            if (i == last) {
+                return sum;
+            }
+            // P(i - 1) / P(i)
+            double ratio = (double) i * (bigN - n - bigX + i) / ((double) (n - i + 1) * (bigX - i + 1));
+            pdfi = pdfi * ratio;
+            i--;
+            if (isNegligible(pdfi, ratio, sum)) {
+                return sum;
+            }
+        }
+    }
+
+    /**
+     * Summands of a tail decrease at least geometrically with the current ratio, so the rest of the tail is
+     * at most next * ratio / (1 - ratio).
+     *
+     * @param next next summand
+     * @param ratio ratio of the next summand and the previous one
+     * @param sum current sum
+     * @return true if the rest of the tail is below double precision of sum
+     */
+    private static boolean isNegligible(double next, double ratio, double sum) {
+        if (next == 0) {
+            return true;
+        }
+        return ratio < 1 && next / (1 - ratio) < sum * 0x1.0p-54;
+    }
+
+    /**
+     * the most extreme x is min(X, n) for over-representation and max(0, X - (N - n)) for under-representation.
+     * Tail of the most extreme x contains only one summand.
+     *
+     * @return minimum achievable p value
+     */
+    @Override
+    public double calculateMinimumProbability() {
+        if (bigN < 2) {
+            return 1;
+        }
+        int extreme = isOver ? Math.min(bigX, n) : Math.max(0, bigX - (bigN - n));
+        return Math.min(1, Math.exp(logPdf(extreme)));
+    }
+
     public boolean getIsOver(){return isOver;}
     
     public void setIsOver(boolean newValue){isOver = newValue;}
 
     @Override
-    public String calculateDistribution() {
+    public double calculateProbability() {
         return calculateHypergDistr();
     }
 }
@@ -15,7 +15,10 @@ import ontology.Annotation;
  */
 public interface IAnnotation {
     Annotation getAnnotation();
-    Map<String, HashSet<String>> getAlias();
+    Alias getAliasTable();
+    default Map<String, HashSet<String>> getAlias() {
+        return getAliasTable().asMap();
+    }
     boolean getOrphans();
     boolean getConsistency();
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+/**
+ * <p>Multiple testing correction that works on primitive arrays. New corrections (e.g. Holm or
+ * Benjamini-Yekutieli) implement this interface and plug into {@link CalculateCorrectionTask#calculate()}.</p>
+ *
+ * @version %I% %G%
+ */
+@FunctionalInterface
+public interface ICorrection {
+
+    /**
+     * @param pValues raw p values
+     * @param order indices of pValues in ascending order of p values
+     * @return adjusted p values; index i corresponds to index i of pValues
+     */
+    double[] adjust(double[] pValues, int[] order);
+}
@@ -24,5 +24,26 @@ package bingo;
  */
 @FunctionalInterface
 public interface IDistribution {
-    String calculateDistribution();
+
+    /**
+     * @return p value of the test
+     */
+    double calculateProbability();
+
+    /**
+     * @return p value of the test as text. Kept for callers that still work with strings
+     */
+    default String calculateDistribution() {
+        return Double.toString(calculateProbability());
+    }
+
+    /**
+     * <p>Smallest p value the test can reach for the given margins, i.e. p value of the most extreme x. Terms whose
+     * minimum is above the significance level can be pruned before testing (Tarone).</p>
+     *
+     * @return minimum achievable p value. 0 if it is unknown, so the term is never pruned
+     */
+    default double calculateMinimumProbability() {
+        return 0;
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import cern.jet.stat.Gamma;
+
+/**
+ * <p>Regularized incomplete beta function I_x(a, b) for integer a and b, evaluated with the continued fraction of
+ * Lentz. The prefactor x^a (1 - x)^b / B(a, b) is computed in log space from {@link LogFactorial}, so tails of the
+ * binomial distribution are obtained without summing the terms:</p>
+ * <ul>
+ *     <li>P(K &ge; k | X, p) = I_p(k, X - k + 1)</li>
+ *     <li>P(K &le; k | X, p) = I_(1-p)(X - k, k + 1)</li>
+ * </ul>
+ *
+ * @version %I% %G%
+ */
+final class IncompleteBeta {
+
+    private static final int MAX_ITERATIONS = 100000;
+
+    //a few ulps of 1; spacing of doubles is 1.1e-16 below 1 and 2.2e-16 above
+    private static final double EPSILON = 3e-16;
+
+    private static final double TINY = 1e-300;
+
+    private IncompleteBeta() {
+    }
+
+    /**
+     * @param a first parameter, a &gt; 0
+     * @param b second parameter, b &gt; 0
+     * @param x argument, 0 &le; x &le; 1
+     * @param logX ln(x)
+     * @param logOneMinusX ln(1 - x)
+     * @param logFactorial table of ln(k!). If null Colt is used
+     * @return I_x(a, b)
+     */
+    static double regularized(int a, int b, double x, double logX, double logOneMinusX, LogFactorial logFactorial) {
+        if (x <= 0) {
+            return 0;
+        }
+        if (x >= 1) {
+            return 1;
+        }
+        double logFront = a * logX + b * logOneMinusX - logBeta(a, b, logFactorial);
+        //the continued fraction converges fast for x < (a + 1) / (a + b + 2), otherwise symmetry is used
+        if (x * (a + b + 2) < a + 1) {
+            return Math.exp(logFront) * continuedFraction(a, b, x) / a;
+        }
+        return 1 - Math.exp(logFront) * continuedFraction(b, a, 1 - x) / b;
+    }
+
+    //ln B(a, b) = ln((a - 1)! (b - 1)! / (a + b - 1)!)
+    private static double logBeta(int a, int b, LogFactorial logFactorial) {
+        if (logFactorial == null) {
+            return Gamma.logGamma(a) + Gamma.logGamma(b) - Gamma.logGamma(a + b);
+        }
+        return logFactorial.value(a - 1) + logFactorial.value(b - 1) - logFactorial.value(a + b - 1);
+    }
+
+    //modified Lentz evaluation of the continued fraction for I_x(a, b)
+    //throws ArithmeticException if it does not converge in MAX_ITERATIONS
+    private static double continuedFraction(int a, int b, double x) {
+        double qab = (double) a + b;
+        double qap = a + 1.0;
+        double qam = a - 1.0;
+        double c = 1;
+        double d = 1 - qab * x / qap;
+        if (Math.abs(d) < TINY) {
+            d = TINY;
+        }
+        d = 1 / d;
+        double h = d;
+        for (int m = 1; m <= MAX_ITERATIONS; m++) {
+            int m2 = 2 * m;
+            double aa = (double) m * (b - m) * x / ((qam + m2) * (a + m2));
+            d = 1 + aa * d;
+            if (Math.abs(d) < TINY) {
+                d = TINY;
+            }
+            c = 1 + aa / c;
+            if (Math.abs(c) < TINY) {
+                c = TINY;
+            }
+            d = 1 / d;
+            h *= d * c;
+            aa = -(a + m) * (qab + m) * x / ((a + m2) * (qap + m2));
+            d = 1 + aa * d;
+            if (Math.abs(d) < TINY) {
+                d = TINY;
+            }
+            c = 1 + aa / c;
+            if (Math.abs(c) < TINY) {
+                c = TINY;
+            }
+            d = 1 / d;
+            double delta = d * c;
+            h *= delta;
+            if (Math.abs(delta - 1) < EPSILON) {
+                return h;
+            }
+        }
+        throw new ArithmeticException("Incomplete beta continued fraction did not converge for a = " + a
+                + ", b = " + b + ", x = " + x);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import cern.jet.stat.Gamma;
+
+/**
+ * <p>Lookup table of natural logarithms of factorials, ln(k!) for k = 0 ... max. The table is built once per
+ * annotation load (see {@link AnnotationParser#getLogFactorial()}) and afterwards it is only read, so one
+ * instance can be shared by all {@link BingoRunner} threads.</p>
+ * <p>Values are taken from {@link Gamma#logGamma(double)} so the results are the same as the ones obtained by
+ * calling Colt directly. Arguments outside the table fall back to Colt.</p>
+ *
+ * @version %I% %G%
+ */
+public final class LogFactorial {
+
+    /**
+     * <p>ln(k!) for k = 0 ... table.length - 1</p>
+     */
+    private final double[] table;
+
+    /**
+     * <p>Constructor</p>
+     * @param max the largest k for which ln(k!) is stored. Usually the size of the population (big N)
+     */
+    public LogFactorial(int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("Size of log-factorial table must not be negative: " + max);
+        }
+        table = new double[max + 1];
+        for (int k = 0; k <= max; k++) {
+            table[k] = Gamma.logGamma(k + 1);
+        }
+    }
+
+    /**
+     * @param k non-negative integer
+     * @return ln(k!)
+     */
+    public double value(int k) {
+        return k < table.length ? table[k] : Gamma.logGamma(k + 1);
+    }
+
+    /**
+     * @return the largest k stored in the table
+     */
+    public int getMax() {
+        return table.length - 1;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Bounded cache of p values keyed by (x, X, n, N). In batch mode many clusters test the same quadruple, so the
+ * result of a test is calculated once per run and reused by all {@link BingoRunner} tasks. One cache belongs to one
+ * {@link StatisticsDescriptor}, i.e. to one statistical test and one representation.</p>
+ * <p>The cache is split into segments, each of them is a least recently used map guarded by its own lock, so it is
+ * safe to use from the thread pool started in batch mode. When a segment is full its least recently used entry is
+ * evicted.</p>
+ *
+ * @version %I% %G%
+ */
+public final class PValueCache {
+
+    /**
+     * default maximal number of cached p values
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+
+    private static final int NUMBER_OF_SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * <p>Constructor</p>
+     * @param capacity maximal number of cached p values
+     */
+    public PValueCache(int capacity) {
+        if (capacity < NUMBER_OF_SEGMENTS) {
+            throw new IllegalArgumentException("Capacity of p value cache must be at least " + NUMBER_OF_SEGMENTS);
+        }
+        segments = new Segment[NUMBER_OF_SEGMENTS];
+        for (int i = 0; i < NUMBER_OF_SEGMENTS; i++) {
+            segments[i] = new Segment(capacity / NUMBER_OF_SEGMENTS);
+        }
+    }
+
+    /**
+     * <p>Returns cached p value or calculates it and stores it in the cache</p>
+     * @param x number of successes in sample
+     * @param bigX sample size
+     * @param n number of successes in population
+     * @param bigN population size
+     * @param distribution test that is calculated if p value is not cached
+     * @return p value
+     */
+    public double getProbability(int x, int bigX, int n, int bigN, IDistribution distribution) {
+        Key key = new Key(x, bigX, n, bigN);
+        Segment segment = segments[(key.hashCode() >>> 16 ^ key.hashCode()) & (NUMBER_OF_SEGMENTS - 1)];
+        Double value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            hits.incrementAndGet();
+            return value;
+        }
+        misses.incrementAndGet();
+        //calculated outside of lock; two threads may calculate the same value, but the result is the same
+        double probability = distribution.calculateProbability();
+        synchronized (segment) {
+            segment.put(key, probability);
+        }
+        return probability;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits: " + getHits() + ", misses: " + getMisses() + ", evictions: " + getEvictions();
+    }
+
+    private final class Segment extends LinkedHashMap<Key, Double> {
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+            if (size() > capacity) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class Key {
+
+        private final int x;
+        private final int bigX;
+        private final int n;
+        private final int bigN;
+
+        Key(int x, int bigX, int n, int bigN) {
+            this.x = x;
+            this.bigX = bigX;
+            this.n = n;
+            this.bigN = bigN;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return x == key.x && bigX == key.bigX && n == key.n && bigN == key.bigN;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = x;
+            result = 31 * result + bigX;
+            result = 31 * result + n;
+            result = 31 * result + bigN;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.util.Arrays;
+
+/**
+ * <p>Ordering of tests by p value. Tests are kept in parallel primitive arrays (term ids and p values) so the
+ * order is returned as a permutation of indices instead of sorting boxed entries.</p>
+ * <p>Sorting is stable: tests with equal p values keep the order in which they were calculated.</p>
+ * <p>When only a part of tests is needed (significant tests, the best k tests) the part is selected first and
+ * only the selected indices are sorted.</p>
+ *
+ * @version %I% %G%
+ */
+final class PValueOrder {
+
+    private PValueOrder() {
+    }
+
+    /**
+     * @param values p values
+     * @return indices of values in ascending order of values
+     */
+    static int[] ascending(double[] values) {
+        int[] order = new int[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        return sort(values, order);
+    }
+
+    /**
+     * @param values p values
+     * @param indices ascending indices of values that are ordered
+     * @return indices in ascending order of values
+     */
+    static int[] ascending(double[] values, int[] indices) {
+        return sort(values, indices.clone());
+    }
+
+    /**
+     * <p>Selects k indices with the smallest values using a bounded heap, so only k indices are kept and sorted.
+     * Ties are broken by index, which gives the same k indices as the first k of
+     * {@link #ascending(double[], int[])}</p>
+     * @param values p values
+     * @param indices ascending indices of values among which the smallest are selected
+     * @param k the largest number of selected indices
+     * @return at most k indices in ascending order of values
+     */
+    static int[] smallest(double[] values, int[] indices, int k) {
+        if (indices.length <= k) {
+            return ascending(values, indices);
+        }
+        //max-heap: the root is the largest of the k smallest indices seen so far
+        int[] heap = new int[k];
+        int size = 0;
+        for (int index : indices) {
+            if (size < k) {
+                heap[size] = index;
+                siftUp(values, heap, size++);
+            } else if (k > 0 && isBefore(values, index, heap[0])) {
+                heap[0] = index;
+                siftDown(values, heap, 0, size);
+            }
+        }
+        Arrays.sort(heap, 0, size);
+        return sort(values, Arrays.copyOf(heap, size));
+    }
+
+    private static boolean isBefore(double[] values, int a, int b) {
+        int c = Double.compare(values[a], values[b]);
+        return c < 0 || (c == 0 && a < b);
+    }
+
+    private static void siftUp(double[] values, int[] heap, int position) {
+        int index = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!isBefore(values, heap[parent], index)) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = index;
+    }
+
+    private static void siftDown(double[] values, int[] heap, int position, int size) {
+        int index = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && isBefore(values, heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!isBefore(values, index, heap[child])) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = index;
+    }
+
+    //stable merge sort of order according to values
+    private static int[] sort(double[] values, int[] order) {
+        int[] buffer = new int[order.length];
+        //bottom-up merge sort on indices
+        for (int width = 1; width < order.length; width *= 2) {
+            for (int low = 0; low < order.length - width; low += 2 * width) {
+                int middle = low + width;
+                int high = Math.min(low + 2 * width, order.length);
+                merge(values, order, buffer, low, middle, high);
+            }
+        }
+        return order;
+    }
+
+    private static void merge(double[] values, int[] order, int[] buffer, int low, int middle, int high) {
+        System.arraycopy(order, low, buffer, low, high - low);
+        int left = low;
+        int right = middle;
+        for (int k = low; k < high; k++) {
+            if (left < middle && (right >= high || Double.compare(values[buffer[left]], values[buffer[right]]) <= 0)) {
+                order[k] = buffer[left++];
+            } else {
+                order[k] = buffer[right++];
+            }
+        }
+    }
+}
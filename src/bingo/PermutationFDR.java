@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>Empirical false discovery rate estimated by permutations. Every permutation draws a random sample of X genes
+ * from the N annotated genes of the reference set and tests all terms against it. For the observed p value t</p>
+ * <p>FDR(t) = (mean number of permuted p values &le; t) / (number of observed p values &le; t)</p>
+ * <p>and the adjusted p value of a term is the minimum of FDR over all observed p values that are not smaller than
+ * its own, capped at 1.</p>
+ * <p>A random sample may hit terms that the cluster did not, so every permutation tests all terms that can be tested
+ * in a sample of the reference set: terms with n &gt; 0 that are not pruned
+ * ({@link StatisticTestCalculate#getNullTermIndices(int, int)}). x of a term in a permuted sample is
+ * popcount(genes of term AND sample), read from the {@link TermGeneIndex} shared by all clusters. Null p values are
+ * kept in a cache of the cluster, apart from the p values shared by clusters. Permutations are split into fixed
+ * groups that run on the fork-join pool; every permutation has its own random stream split from the seed before the
+ * run, so the result does not depend on the number of threads.</p>
+ *
+ * @version %I% %G%
+ */
+public class PermutationFDR extends CalculateCorrectionTask {
+
+    /**
+     * default number of permutations
+     */
+    public static final int DEFAULT_NUMBER_OF_PERMUTATIONS = 1000;
+
+    //number of permutations that share one histogram
+    private static final int PERMUTATIONS_PER_GROUP = 16;
+
+    //maximal number of null p values cached for one cluster
+    private static final int NULL_CACHE_CAPACITY = 1 << 16;
+
+    private final StatisticTestCalculate test;
+
+    private final int numberOfPermutations;
+
+    private final long seed;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor.
+     *
+     * @param test calculated statistical test of the cluster
+     * @param numberOfPermutations number of random samples
+     * @param seed seed of random numbers
+     * @param pool pool that runs permutations. If null permutations are run on the calling thread
+     */
+    public PermutationFDR(StatisticTestCalculate test, int numberOfPermutations, long seed, ForkJoinPool pool) {
+        super(test.getTermIds(), test.getPValues());
+        if (numberOfPermutations < 1) {
+            throw new IllegalArgumentException("Number of permutations must be positive");
+        }
+        this.test = test;
+        this.numberOfPermutations = numberOfPermutations;
+        this.seed = seed;
+        this.pool = pool;
+    }
+
+    /**
+     * @param pValues raw p values
+     * @param order indices of pValues in ascending order
+     * @return adjusted p values in the same order as pValues
+     */
+    @Override
+    public double[] adjust(double[] pValues, int[] order) {
+        final int m = pValues.length;
+        double[] adjusted = new double[m];
+        if (m == 0) {
+            return adjusted;
+        }
+        final double[] observed = new double[m];
+        for (int i = 0; i < m; i++) {
+            observed[i] = pValues[order[i]];
+        }
+
+        final int bigX = test.getBigX()[0];
+        final int bigN = test.getBigN()[0];
+        int[] terms = test.getNullTermIndices(bigX, bigN);
+        int[] counts = test.getSmallNCounts();
+        final int[] smallN = new int[terms.length];
+        for (int k = 0; k < terms.length; k++) {
+            smallN[k] = counts[terms[k]];
+        }
+        //genes that can be drawn into a sample and genes of every term of the null family
+        final int[] genes;
+        final CompressedBitSet[] termGenes = new CompressedBitSet[terms.length];
+        final int words;
+        TermGeneIndex index = test.getTermGeneIndex();
+        long[] referenceGenes = index == null ? null : test.getReferenceGenes();
+        if (referenceGenes != null) {
+            genes = toIndices(referenceGenes);
+            for (int k = 0; k < terms.length; k++) {
+                termGenes[k] = index.getTermGenes(terms[k]);
+            }
+            words = referenceGenes.length;
+        } else {
+            genes = indexClassifications(test.getReferenceClassifications(), terms, counts.length, termGenes);
+            words = (genes.length + 63) >>> 6;
+        }
+        final int sampleSize = Math.min(bigX, genes.length);
+        final PValueCache cache = new PValueCache(NULL_CACHE_CAPACITY);
+
+        //streams are split in order before the run, so permutation b always uses the same stream
+        SplittableRandom root = new SplittableRandom(seed);
+        final SplittableRandom[] randoms = new SplittableRandom[numberOfPermutations];
+        for (int b = 0; b < numberOfPermutations; b++) {
+            randoms[b] = root.split();
+        }
+        int groups = (numberOfPermutations + PERMUTATIONS_PER_GROUP - 1) / PERMUTATIONS_PER_GROUP;
+        final long[][] histograms = new long[groups][];
+        RangeTask.forEach(pool, groups, 1, group -> histograms[group] = permute(group, randoms, genes, words,
+                sampleSize, termGenes, smallN, bigX, bigN, observed, cache));
+
+        //falsePositives[i] = number of permuted p values <= observed[i] in all permutations
+        long[] falsePositives = new long[m];
+        long sum = 0;
+        for (int i = 0; i < m; i++) {
+            for (long[] histogram : histograms) {
+                sum += histogram[i];
+            }
+            falsePositives[i] = sum;
+        }
+
+        double min = 1;
+        int rejected = m;
+        for (int i = m - 1; i >= 0; i--) {
+            //tied p values share the number of observed p values <= t
+            if (i == m - 1 || observed[i] != observed[i + 1]) {
+                rejected = i + 1;
+            }
+            double fdr = (double) falsePositives[rejected - 1] / numberOfPermutations / rejected;
+            if (fdr < min) {
+                min = fdr;
+            }
+            adjusted[order[i]] = min;
+        }
+        return adjusted;
+    }
+
+    //set bits of a bitmap in ascending order
+    private static int[] toIndices(long[] bitmap) {
+        int size = 0;
+        for (long word : bitmap) {
+            size += Long.bitCount(word);
+        }
+        int[] indices = new int[size];
+        int k = 0;
+        for (int w = 0; w < bitmap.length; w++) {
+            for (long word = bitmap[w]; word != 0; word &= word - 1) {
+                indices[k++] = (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * <p>Genes of terms if counts do not use a {@link TermGeneIndex}. Classified reference nodes are numbered
+     * 0 ... N - 1 in iteration order</p>
+     * @param classifications dense term indices of classifications of reference nodes
+     * @param terms dense indices of terms of the null family
+     * @param numberOfTerms number of terms of the ontology
+     * @param termGenes filled with genes of terms, parallel to terms
+     * @return genes that can be drawn into a sample, 0 ... N - 1
+     */
+    private static int[] indexClassifications(int[][] classifications, int[] terms, int numberOfTerms,
+                                              CompressedBitSet[] termGenes) {
+        int[] positions = new int[numberOfTerms];
+        Arrays.fill(positions, -1);
+        for (int k = 0; k < terms.length; k++) {
+            positions[terms[k]] = k;
+        }
+        int[] sizes = new int[terms.length];
+        int numberOfGenes = 0;
+        for (int[] termIndices : classifications) {
+            if (termIndices.length == 0) {
+                continue;
+            }
+            numberOfGenes++;
+            for (int termIndex : termIndices) {
+                if (positions[termIndex] >= 0) {
+                    sizes[positions[termIndex]]++;
+                }
+            }
+        }
+        int[][] lists = new int[terms.length][];
+        for (int k = 0; k < terms.length; k++) {
+            lists[k] = new int[sizes[k]];
+            sizes[k] = 0;
+        }
+        int gene = 0;
+        for (int[] termIndices : classifications) {
+            if (termIndices.length == 0) {
+                continue;
+            }
+            for (int termIndex : termIndices) {
+                int k = positions[termIndex];
+                if (k >= 0) {
+                    lists[k][sizes[k]++] = gene;
+                }
+            }
+            gene++;
+        }
+        for (int k = 0; k < terms.length; k++) {
+            termGenes[k] = CompressedBitSet.of(lists[k], sizes[k]);
+        }
+        int[] genes = new int[numberOfGenes];
+        for (int i = 0; i < numberOfGenes; i++) {
+            genes[i] = i;
+        }
+        return genes;
+    }
+
+    /**
+     * @return histogram: element i is the number of permuted p values p with observed[i - 1] &lt; p &le; observed[i]
+     */
+    private long[] permute(int group, SplittableRandom[] randoms, int[] genes, int words, int sampleSize,
+                           CompressedBitSet[] termGenes, int[] smallN, int bigX, int bigN, double[] observed,
+                           PValueCache cache) {
+        long[] histogram = new long[observed.length + 1];
+        int[] shuffled = new int[genes.length];
+        long[] sample = new long[words];
+        int last = Math.min(numberOfPermutations, (group + 1) * PERMUTATIONS_PER_GROUP);
+        for (int b = group * PERMUTATIONS_PER_GROUP; b < last; b++) {
+            SplittableRandom random = randoms[b];
+            System.arraycopy(genes, 0, shuffled, 0, genes.length);
+            Arrays.fill(sample, 0);
+            //partial Fisher-Yates shuffle
+            for (int k = 0; k < sampleSize; k++) {
+                int j = k + random.nextInt(shuffled.length - k);
+                int tmp = shuffled[k];
+                shuffled[k] = shuffled[j];
+                shuffled[j] = tmp;
+                sample[shuffled[k] >>> 6] |= 1L << shuffled[k];
+            }
+            for (int k = 0; k < termGenes.length; k++) {
+                int x = termGenes[k].andCardinality(sample);
+                histogram[lowerBound(observed, test.calculateProbability(x, bigX, smallN[k], bigN, cache))]++;
+            }
+        }
+        return histogram;
+    }
+
+    //index of the first value >= key, values.length if there is no such value
+    private static int lowerBound(double[] values, double key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int getNumberOfPermutations() {
+        return numberOfPermutations;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * <p>Fork-join task that applies an action to every index of a range. The range is split in halves until it is
+ * small enough. Used to test terms and to collect classifications of genes of one cluster on several threads. The
+ * action must write its result only to the slot of its own index; callers merge slots in index order, so the
+ * result does not depend on the number of threads.</p>
+ *
+ * @version %I% %G%
+ */
+final class RangeTask extends RecursiveAction {
+
+    /**
+     * ranges with at most this many indices are not split any more
+     */
+    private static final int THRESHOLD = 64;
+
+    private final int from;
+
+    private final int to;
+
+    private final int threshold;
+
+    private final IntConsumer action;
+
+    private RangeTask(int from, int to, int threshold, IntConsumer action) {
+        this.from = from;
+        this.to = to;
+        this.threshold = threshold;
+        this.action = action;
+    }
+
+    /**
+     * <p>Applies action to indices 0 ... size - 1</p>
+     * @param pool pool that runs the action. If null the action is applied on the calling thread
+     * @param size number of indices
+     * @param action action applied to every index
+     */
+    static void forEach(ForkJoinPool pool, int size, IntConsumer action) {
+        forEach(pool, size, THRESHOLD, action);
+    }
+
+    /**
+     * <p>Applies action to indices 0 ... size - 1</p>
+     * @param pool pool that runs the action. If null the action is applied on the calling thread
+     * @param size number of indices
+     * @param threshold ranges with at most this many indices are run on one thread. 1 for expensive actions
+     * @param action action applied to every index
+     */
+    static void forEach(ForkJoinPool pool, int size, int threshold, IntConsumer action) {
+        if (pool == null || size <= threshold) {
+            for (int i = 0; i < size; i++) {
+                action.accept(i);
+            }
+        } else {
+            pool.invoke(new RangeTask(0, size, threshold, action));
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= threshold) {
+            for (int i = from; i < to; i++) {
+                action.accept(i);
+            }
+        } else {
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, threshold, action), new RangeTask(middle, to, threshold, action));
+        }
+    }
+}
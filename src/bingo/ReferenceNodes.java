@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Reference set of one cluster, kept as the shared {@link ReferenceStatistics} plus the names changed by the
+ * cluster. Membership, size and counts of terms are answered from the delta; the set is built only if it is
+ * iterated, and then in the same order as a set built name by name.</p>
+ * <p>Instances are used by one thread.</p>
+ *
+ * @version %I% %G%
+ */
+final class ReferenceNodes extends AbstractSet<String> {
+
+    private final ReferenceStatistics statistics;
+
+    private final Set<String> selectedNodes;
+
+    private final Alias alias;
+
+    //name -> true if the cluster adds it, false if the cluster removes it
+    private final Map<String, Boolean> changes = new HashMap<>();
+
+    private final int size;
+
+    //built on first iteration
+    private Set<String> nodes;
+
+    ReferenceNodes(ReferenceStatistics statistics, Set<String> selectedNodes, Alias alias) {
+        this.statistics = statistics;
+        this.selectedNodes = selectedNodes;
+        this.alias = alias;
+        // replace canonical names in reference set that match one of the
+        // canonical names in the selected cluster, to get rid of e.g. splice
+        // variants if the non-splice-specific gene is part of the selection,
+        // and to avoid conflicts between names in ref set and selection
+        SymbolTable symbols = alias.getSymbols();
+        for (String name : selectedNodes) {
+            int id = alias.getNameId(name);
+            if (id >= 0) {
+                for (int i = 0; i < alias.getNumberOfIdentifiers(id); i++) {
+                    changes.put(symbols.getSymbol(alias.getIdentifier(id, i)), Boolean.FALSE);
+                }
+                changes.put(name, Boolean.TRUE);
+            }
+        }
+        int s = statistics.size();
+        for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+            boolean base = statistics.containsName(change.getKey());
+            if (change.getValue() && !base) {
+                s++;
+            } else if (!change.getValue() && base) {
+                s--;
+            }
+        }
+        size = s;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        Boolean change = changes.get(o);
+        return change != null ? change : o instanceof String && statistics.containsName((String) o);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        if (nodes == null) {
+            Set<String> set = new HashSet<>();
+            for (String name : statistics.getNames()) {
+                set.add(name);
+            }
+            SymbolTable symbols = alias.getSymbols();
+            for (String name : selectedNodes) {
+                int id = alias.getNameId(name);
+                if (id >= 0) {
+                    for (int i = 0; i < alias.getNumberOfIdentifiers(id); i++) {
+                        set.remove(symbols.getSymbol(alias.getIdentifier(id, i)));
+                    }
+                    set.add(name);
+                }
+            }
+            nodes = set;
+        }
+        return nodes.iterator();
+    }
+
+    /**
+     * <p>Adds n of the cluster reference set to counts: shared n corrected by genes of changed names</p>
+     * @param counts counts indexed by dense term index
+     * @return N of the cluster reference set
+     */
+    int count(int[] counts) {
+        int[] smallN = statistics.getSmallN();
+        for (int t = 0; t < counts.length; t++) {
+            counts[t] += smallN[t];
+        }
+        TermGeneIndex termGeneIndex = statistics.getTermGeneIndex();
+        int bigN = statistics.getBigN();
+        for (Map.Entry<String, Boolean> change : changes.entrySet()) {
+            boolean added = change.getValue();
+            if (added == statistics.containsName(change.getKey())) {
+                continue;
+            }
+            int gene = termGeneIndex.getGeneIndex(change.getKey());
+            if (gene < 0) {
+                continue;
+            }
+            int[] terms = termGeneIndex.getGeneTerms(gene);
+            if (terms.length == 0) {
+                continue;
+            }
+            int sign = added ? 1 : -1;
+            bigN += sign;
+            for (int t : terms) {
+                counts[t] += sign;
+            }
+        }
+        return bigN;
+    }
+
+    TermGeneIndex getTermGeneIndex() {
+        return statistics.getTermGeneIndex();
+    }
+}
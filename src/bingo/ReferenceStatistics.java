@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Counts of a reference set that are shared by all clusters of a run: the names of the reference set, the
+ * number of classified genes (N) and the number of classified genes of every term (n). They depend only on the
+ * annotation, the namespace, the discarded evidence codes (all fixed by one {@link AnnotationParser}) and the
+ * reference set, so they are computed once ({@link AnnotationParser#getReferenceStatistics(String)}).</p>
+ * <p>A cluster replaces identifiers of its selected genes by the selected names. This small delta is kept by
+ * {@link ReferenceNodes}, which counts n and N of the cluster from the shared counts.</p>
+ *
+ * @version %I% %G%
+ */
+public final class ReferenceStatistics {
+
+    private final TermGeneIndex termGeneIndex;
+
+    //names of the reference set in the order in which they are added to the reference set
+    private final String[] names;
+
+    private final Set<String> nameSet;
+
+    //n of every term, by dense term index
+    private final int[] smallN;
+
+    private final int bigN;
+
+    /**
+     * <p>Constructor</p>
+     * @param names upper case names of the reference set in the order in which they are added to it
+     * @param termGeneIndex genes of terms
+     */
+    public ReferenceStatistics(List<String> names, TermGeneIndex termGeneIndex) {
+        this.termGeneIndex = termGeneIndex;
+        this.names = names.toArray(new String[0]);
+        this.nameSet = new HashSet<>(names);
+        long[] genes = termGeneIndex.toBitmap(nameSet);
+        int classified = 0;
+        for (long word : genes) {
+            classified += Long.bitCount(word);
+        }
+        bigN = classified;
+        smallN = new int[termGeneIndex.getNumberOfTerms()];
+        for (int t = 0; t < smallN.length; t++) {
+            smallN[t] = termGeneIndex.getTermGenes(t).andCardinality(genes);
+        }
+    }
+
+    /**
+     * @param annotationNames names of the annotation
+     * @return upper case names of the whole annotation used as reference set
+     */
+    static List<String> genomeNames(String[] annotationNames) {
+        List<String> names = new ArrayList<>(annotationNames.length);
+        for (String name : annotationNames) {
+            if (name != null && name.length() != 0) {
+                names.add(name.toUpperCase());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @param refSetFile file whose first column contains names of the reference set
+     * @return upper case names of the reference set
+     */
+    static HashSet<String> readReferenceSet(String refSetFile) {
+        HashSet<String> refSet = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(new File(refSetFile)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.trim().split("\t");
+                refSet.add(tokens[0].trim().toUpperCase());
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading reference file: " + e);
+        }
+        return refSet;
+    }
+
+    /**
+     * @param refSet names read by {@link #readReferenceSet(String)}
+     * @return non-empty upper case names in the iteration order of refSet
+     */
+    static List<String> customNames(Set<String> refSet) {
+        List<String> names = new ArrayList<>(refSet.size());
+        for (String s : refSet) {
+            if (s.length() != 0) {
+                names.add(s.toUpperCase());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * <p>Reference set of one cluster: identifiers of selected nodes are removed and selected nodes are added</p>
+     * @param selectedNodes selected nodes of the cluster
+     * @param alias gene name -> identifiers of the annotation
+     * @return reference nodes of the cluster
+     */
+    public ReferenceNodes getReferenceNodes(Set<String> selectedNodes, Alias alias) {
+        return new ReferenceNodes(this, selectedNodes, alias);
+    }
+
+    String[] getNames() {
+        return names;
+    }
+
+    boolean containsName(String name) {
+        return nameSet.contains(name);
+    }
+
+    int size() {
+        return nameSet.size();
+    }
+
+    int[] getSmallN() {
+        return smallN;
+    }
+
+    int getBigN() {
+        return bigN;
+    }
+
+    TermGeneIndex getTermGeneIndex() {
+        return termGeneIndex;
+    }
+}
@@ -32,11 +32,13 @@ package bingo;
  * * Date: Mar.25.2005
  * * Description: class that counts the small n, big N, small x, big X which serve as input for the statistical tests.     
  **/
-import java.util.HashMap;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import ontology.Annotation;
 import ontology.Ontology;
 
@@ -47,7 +49,25 @@ import ontology.Ontology;
  * <ol>Changes:
  *  <li>added new constructor {@link #StandardDistributionCount(ontology.Annotation, ontology.Ontology, java.util.Set,
  *  java.util.Set, java.util.Map, boolean)}</li>
- *  <li>code in {@link #count(java.util.Set) } method is slightly changed to be in line with upstream changes</li>
+ *  <li>code in {@link #count(java.util.Set, int[]) } method is slightly changed to be in line with upstream changes</li>
+ *  <li>added new constructor {@link #StandardDistributionCount(ontology.Annotation, ontology.Ontology, java.util.Set,
+ *  java.util.Set, java.util.Map, boolean, java.util.concurrent.ForkJoinPool)}. Classifications of nodes are collected
+ *  by {@link #classify(java.util.Set)} on the threads of the pool and counted in the order of nodes</li>
+ *  <li>classifications of selected and reference nodes are collected only once per cluster and are available to
+ *  permutation tests through {@link #getReferenceClassifications()}</li>
+ *  <li>classifications are kept as dense term indices ({@link ontology.Ontology#getTermIndex(int)}) and x, n, X and
+ *  N are counted into int arrays in one pass per gene set. Maps of counts are built only on request. Method
+ *  <code>HashSet&lt;String&gt; getAllClassifications()</code> was removed</li>
+ *  <li>added new constructor {@link #StandardDistributionCount(ontology.Annotation, ontology.Ontology, java.util.Set,
+ *  java.util.Set, java.util.Map, boolean, java.util.concurrent.ForkJoinPool, TermGeneIndex)}. If the index is given
+ *  x and n are counted as popcount(genes of term AND genes of set) instead of walking classifications of nodes</li>
+ *  <li>n and N of {@link ReferenceNodes} are taken from counts shared by all clusters</li>
+ *  <li>classifications are read as views of the frozen annotation, without copying</li>
+ *  <li>classifications of nodes are read from {@link TermGeneIndex#getNodeTerms(String)}, resolved once per run</li>
+ *  <li>x of a small set is counted from the terms of its genes, x of a larger set as popcounts
+ *  ({@link #countGenes(long[], int[])})</li>
+ *  <li>n of every term, the index and the genes of the reference set are available to permutation tests
+ *  ({@link #getSmallNCounts()}, {@link #getTermGeneIndex()}, {@link #getReferenceGenes()})</li>
  * </ol>
  * ----------------------
  * <p>
@@ -62,6 +82,11 @@ public class StandardDistributionCount extends DistributionCount {
      */
     private Annotation annotation;
 
+    /**
+     * the ontology. Its dense term indices are used as indices of count arrays.
+     */
+    private Ontology ontology;
+
     private Map<String, HashSet<String>> alias;
     /**
      * HashSet of selected nodes
@@ -72,27 +97,88 @@ public class StandardDistributionCount extends DistributionCount {
      */
     private Set<String> refNodes;
     /**
-     * hashmap with values of small n ; keys GO labels.
+     * small x of every term of the ontology, indexed by dense term index.
+     */
+    private int[] smallXCounts;
+    /**
+     * small n of every term of the ontology, indexed by dense term index.
+     */
+    private int[] smallNCounts;
+    /**
+     * number of classified selected nodes.
+     */
+    private int bigXCount;
+    /**
+     * number of classified reference nodes.
+     */
+    private int bigNCount;
+    /**
+     * ids of tested terms.
+     */
+    private int[] termIds;
+    /**
+     * dense indices of tested terms, parallel to {@link #termIds}.
+     */
+    private int[] termIndices;
+    /**
+     * values of small x, parallel to {@link #termIds}.
+     */
+    private int[] smallX;
+    /**
+     * values of small n, parallel to {@link #termIds}.
+     */
+    private int[] smallN;
+    /**
+     * values of big X, parallel to {@link #termIds}.
+     */
+    private int[] bigX;
+    /**
+     * values of big N, parallel to {@link #termIds}.
+     */
+    private int[] bigN;
+    /**
+     * hashmap with values of small n ; keys GO labels. Built on request.
      */
     private Map<Integer, Integer> mapSmallN;
     /**
-     * hashmap with values of small x ; keys GO labels.
+     * hashmap with values of small x ; keys GO labels. Built on request.
      */
     private Map<Integer, Integer> mapSmallX;
     /**
-     * hashmap with values of big N.
+     * hashmap with values of big N. Built on request.
      */
     private Map<Integer, Integer> mapBigN;
     /**
-     * hashmap with values of big X.
+     * hashmap with values of big X. Built on request.
      */
     private Map<Integer, Integer> mapBigX;
 
     private boolean isOver = true;
 
+    /**
+     * pool used to collect classifications of nodes in parallel. If null nodes are processed on the calling thread.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * genes of terms shared by all clusters. If null classifications of nodes are counted.
+     */
+    private TermGeneIndex termGeneIndex;
+
+    /**
+     * classifications of selected nodes, collected once.
+     */
+    private int[][] selectedClassifications;
+
+    /**
+     * classifications of reference nodes, collected once.
+     */
+    private int[][] referenceClassifications;
+
     public StandardDistributionCount(Annotation annotation, Ontology ontology, Set<String> selectedNodes, Set<String> refNodes,
             Map<String, HashSet<String>> alias) {
         this.annotation = annotation;
+        this.ontology = ontology;
         this.alias = alias;
         annotation.setOntology(ontology);
 
@@ -102,20 +188,31 @@ public class StandardDistributionCount extends DistributionCount {
 
     public StandardDistributionCount(Annotation annotation, Ontology ontology, Set<String> selectedNodes, Set<String> refNodes,
             Map<String, HashSet<String>> alias, boolean isOver) {
-        this.annotation = annotation;
-        this.alias = alias;
-        annotation.setOntology(ontology);
-
-        this.selectedNodes = selectedNodes;
-        this.refNodes = refNodes;
+        this(annotation, ontology, selectedNodes, refNodes, alias);
         this.isOver = isOver;
     }
 
+    public StandardDistributionCount(Annotation annotation, Ontology ontology, Set<String> selectedNodes, Set<String> refNodes,
+            Map<String, HashSet<String>> alias, boolean isOver, ForkJoinPool pool) {
+        this(annotation, ontology, selectedNodes, refNodes, alias, isOver);
+        this.pool = pool;
+    }
+
+    public StandardDistributionCount(Annotation annotation, Ontology ontology, Set<String> selectedNodes, Set<String> refNodes,
+            Map<String, HashSet<String>> alias, boolean isOver, ForkJoinPool pool, TermGeneIndex termGeneIndex) {
+        this(annotation, ontology, selectedNodes, refNodes, alias, isOver, pool);
+        //the index can be used only if its terms are indexed by this ontology
+        if (termGeneIndex != null && termGeneIndex.getOntology() == ontology) {
+            this.termGeneIndex = termGeneIndex;
+        }
+    }
+
     @Override
     public void calculate() {
 
         countSmallX();
         countSmallN();
+        selectTerms();
         countBigX();
         countBigN();
     }
@@ -131,17 +228,23 @@ public class StandardDistributionCount extends DistributionCount {
         //System.out.print(node + " ");
         // HashSet for the classifications of a particular node
         HashSet<String> classifications = new HashSet<>();
+        if (termGeneIndex != null) {
+            for (int term : termGeneIndex.getNodeTerms(node + "")) {
+                classifications.add(ontology.getTermId(term) + "");
+            }
+            return classifications;
+        }
         Set<String> identifiers = alias.get(node + "");
         if (identifiers != null) {
             
             Iterator it = identifiers.iterator();
-            int[] goID;
+            IntBuffer goID;
             while (it.hasNext()) {
-                goID = annotation.getClassifications(it.next() + "");
+                goID = annotation.getClassificationsView(it.next() + "");
                 
-                for (int t = 0; t < goID.length; t++) {
+                for (int t = 0; t < goID.remaining(); t++) {
                     
-                    classifications.add(goID[t] + "");
+                    classifications.add(goID.get(t) + "");
                     // omitted : all parent classes of GO class that node is
                     // assigned to are also explicitly included in
                     // classifications from the start
@@ -155,93 +258,160 @@ public class StandardDistributionCount extends DistributionCount {
     }
 
     /**
-     * method for compiling represented GO categories for all nodes ; for
-     * underrepresentation, nodes in the set with 0 occurrences but some
-     * occurrence in the reference set are also considered
+     * method for compiling GO classifications for given node as dense term indices
      *
-     * @return
+     * @param node
+     * @return distinct dense indices of terms in ascending order
      */
-    public HashSet<String> getAllClassifications() {
-
-        HashSet<String> classifications = new HashSet<>();
+    int[] getNodeTermIndices(String node) {
+        if (termGeneIndex != null) {
+            return termGeneIndex.getNodeTerms(node + "");
+        }
+        return TermGeneIndex.termIndices(annotation, ontology, alias.get(node + ""));
+    }
 
-        Iterator i = refNodes.iterator();
-        while (i.hasNext()) {
-            Set<String> identifiers = alias.get(i.next() + "");
-            if (identifiers != null) {
-                Iterator it = identifiers.iterator();
-                while (it.hasNext()) {
-                    int[] goID = annotation.getClassifications(it.next() + "");
-                    for (int t = 0; t < goID.length; t++) {
-                        classifications.add(goID[t] + "");
-                    }
-                }
+    /**
+     * method for compiling GO classifications of several nodes. Classifications are collected in parallel if
+     * {@link #pool} is set.
+     *
+     * @param nodes nodes
+     * @return classifications of nodes in the iteration order of nodes
+     */
+    private int[][] classify(Set<String> nodes) {
+        if (nodes == selectedNodes) {
+            if (selectedClassifications == null) {
+                selectedClassifications = collect(nodes);
             }
+            return selectedClassifications;
         }
+        if (nodes == refNodes) {
+            if (referenceClassifications == null) {
+                referenceClassifications = collect(nodes);
+            }
+            return referenceClassifications;
+        }
+        return collect(nodes);
+    }
+
+    private int[][] collect(Set<String> nodes) {
+        final String[] names = nodes.toArray(new String[0]);
+        final int[][] classifications = new int[names.length][];
+        RangeTask.forEach(pool, names.length, i -> classifications[i] = getNodeTermIndices(names[i]));
         return classifications;
     }
 
     /**
-     * method for making the hashmap for small n.
+     * method for making the array for small n.
      */
     @Override
     public void countSmallN() {
-        mapSmallN = this.count(refNodes);
+        smallNCounts = new int[ontology.size()];
+        bigNCount = this.count(refNodes, smallNCounts);
     }
 
     /**
-     * method for making the hashmap for the small x.
+     * method for making the array for the small x.
      */
     @Override
     public void countSmallX() {
-        mapSmallX = this.count(selectedNodes);
+        smallXCounts = new int[ontology.size()];
+        bigXCount = this.count(selectedNodes, smallXCounts);
     }
 
     /**
-     * method that counts for small n and small x.
+     * method that counts for small n and small x. unclassified nodes are not
+     * counted
      *
      * @param nodes
-     * @return
+     * @param counts counts indexed by dense term index
+     * @return number of classified nodes
      */
     @Override
-    public Map<Integer, Integer> count(final Set<String> nodes) {
-
-        HashMap<Integer, Integer> map = new HashMap<>();
-        Integer id;
-        //this check is added
-        if (!isOver) {
-
-            HashSet<String> allClassifications = getAllClassifications();
-
-            Iterator<String> iterator1 = allClassifications.iterator();
-
-            while (iterator1.hasNext()) {
-                id = Integer.parseInt(iterator1.next());
-                if (!map.containsKey(id)) {
-                    map.put(id, 0);
-                }
+    public int count(final Set<String> nodes, final int[] counts) {
+        if (isSharedReference(nodes)) {
+            //shared counts of the reference set corrected by names changed by the cluster
+            return ((ReferenceNodes) nodes).count(counts);
+        }
+        if (termGeneIndex != null) {
+            return countGenes(termGeneIndex.toBitmap(nodes), counts);
+        }
+        int classified = 0;
+        for (int[] classifications : classify(nodes)) {
+            if (classifications.length == 0) {
+                continue;
+            }
+            classified++;
+            for (int t = 0; t < classifications.length; t++) {
+                counts[classifications[t]]++;
             }
-
         }
+        return classified;
+    }
 
-        Iterator<String> i = nodes.iterator();
-        while (i.hasNext()) {
-            HashSet<String> classifications = getNodeClassifications(i.next());
-            Iterator<String> iterator = classifications.iterator();
-            
-            // puts the classification counts in a map
-            while (iterator.hasNext()) {
-                id = Integer.parseInt(iterator.next());
-                if (map.containsKey(id)) {
-                    map.put(id, map.get(id) + 1);
-                } else if (isOver) {
-                    map.put(id, 1);
+    /**
+     * counts classified genes of a set. Terms of a small set are counted by
+     * walking the terms of its genes; for a larger set popcount(genes of term
+     * AND genes of set) is computed for every term. The choice is made from
+     * the number of genes times the mean number of terms per gene
+     *
+     * @param genes bitmap of classified genes of the set
+     * @param counts counts indexed by dense term index
+     * @return number of classified genes
+     */
+    private int countGenes(final long[] genes, final int[] counts) {
+        int classified = 0;
+        for (long word : genes) {
+            classified += Long.bitCount(word);
+        }
+        if (classified * termGeneIndex.getMeanGeneTerms() <= counts.length) {
+            for (int w = 0; w < genes.length; w++) {
+                for (long word = genes[w]; word != 0; word &= word - 1) {
+                    for (int t : termGeneIndex.getGeneTerms((w << 6) + Long.numberOfTrailingZeros(word))) {
+                        counts[t]++;
+                    }
                 }
             }
+            return classified;
+        }
+        RangeTask.forEach(pool, counts.length, t -> counts[t] += termGeneIndex.getTermGenes(t).andCardinality(genes));
+        return classified;
+    }
 
+    /**
+     * selects tested terms: terms of selected nodes for overrepresentation.
+     * for underrepresentation, terms with 0 occurrences in the set but some
+     * occurrence in the reference set are also tested
+     */
+    private void selectTerms() {
+        int[] counts = isOver ? smallXCounts : smallNCounts;
+        int size = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                size++;
+            }
+        }
+        termIds = new int[size];
+        termIndices = new int[size];
+        smallX = new int[size];
+        smallN = new int[size];
+        int k = 0;
+        for (int t = 0; t < counts.length; t++) {
+            if (counts[t] > 0) {
+                termIndices[k] = t;
+                termIds[k] = ontology.getTermId(t);
+                smallX[k] = smallXCounts[t];
+                smallN[k] = smallNCounts[t];
+                k++;
+            }
         }
+        mapSmallX = null;
+        mapSmallN = null;
+    }
 
-        return map;
+    //true if nodes are a cluster reference set whose counts are shared with other clusters
+    private boolean isSharedReference(Set<String> nodes) {
+        return termGeneIndex != null && nodes instanceof ReferenceNodes
+                && ((ReferenceNodes) nodes).getTermGeneIndex() == termGeneIndex;
     }
 
     /**
@@ -250,19 +420,9 @@ public class StandardDistributionCount extends DistributionCount {
      */
     @Override
     public void countBigN() {
-        mapBigN = new HashMap<>();
-        int bigN = refNodes.size();
-        Iterator i = refNodes.iterator();
-        while (i.hasNext()) {
-            HashSet classifications = getNodeClassifications(i.next().toString());
-            Iterator iterator = classifications.iterator();
-            if (!iterator.hasNext()) {
-                bigN--;
-            }
-        }
-        for (Object id : this.mapSmallX.keySet()) {
-            mapBigN.put((Integer) id, bigN);
-        }
+        bigN = new int[termIds.length];
+        Arrays.fill(bigN, bigNCount);
+        mapBigN = null;
     }
 
     /**
@@ -271,24 +431,64 @@ public class StandardDistributionCount extends DistributionCount {
      */
     @Override
     public void countBigX() {
-        mapBigX = new HashMap<>();
-        int bigX = selectedNodes.size();
-        Iterator i = selectedNodes.iterator();
-        while (i.hasNext()) {
-            HashSet classifications = getNodeClassifications(i.next().toString());
-            Iterator iterator = classifications.iterator();
-            if (!iterator.hasNext()) {
-                bigX--;
-            }
-        }
-        for (Object id : this.mapSmallX.keySet()) {
-            mapBigX.put((Integer) id, bigX);
-        }
+        bigX = new int[termIds.length];
+        Arrays.fill(bigX, bigXCount);
+        mapBigX = null;
+    }
+
+    @Override
+    int[][] getReferenceClassifications() {
+        return classify(refNodes);
+    }
+
+    @Override
+    int[] getSmallNCounts() {
+        return smallNCounts;
+    }
+
+    @Override
+    TermGeneIndex getTermGeneIndex() {
+        return termGeneIndex;
+    }
+
+    @Override
+    long[] getReferenceGenes() {
+        return termGeneIndex == null ? null : termGeneIndex.toBitmap(refNodes);
+    }
+
+    @Override
+    int[] getTermIndices() {
+        return termIndices;
+    }
+
+    @Override
+    public int[] getTermIds() {
+        return termIds;
+    }
+
+    @Override
+    int[] getSmallX() {
+        return smallX;
+    }
+
+    @Override
+    int[] getSmallN() {
+        return smallN;
+    }
+
+    @Override
+    int[] getBigX() {
+        return bigX;
+    }
+
+    @Override
+    int[] getBigN() {
+        return bigN;
     }
 
     @Override
     public Map getTestMap() {
-        return mapSmallX;
+        return getMapSmallX();
     }
 
     /**
@@ -298,6 +498,9 @@ public class StandardDistributionCount extends DistributionCount {
      */
     @Override
     public Map<Integer, Integer> getMapSmallN() {
+        if (mapSmallN == null && termIds != null) {
+            mapSmallN = toMap(termIds, smallN);
+        }
         return mapSmallN;
     }
 
@@ -308,16 +511,25 @@ public class StandardDistributionCount extends DistributionCount {
      */
     @Override
     public Map<Integer, Integer> getMapSmallX() {
+        if (mapSmallX == null && termIds != null) {
+            mapSmallX = toMap(termIds, smallX);
+        }
         return mapSmallX;
     }
 
     @Override
     public Map<Integer, Integer> getMapBigN() {
+        if (mapBigN == null && termIds != null) {
+            mapBigN = toMap(termIds, bigN);
+        }
         return mapBigN;
     }
 
     @Override
     public Map<Integer, Integer> getMapBigX() {
+        if (mapBigX == null && termIds != null) {
+            mapBigX = toMap(termIds, bigX);
+        }
         return mapBigX;
     }
 }
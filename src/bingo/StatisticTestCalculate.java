@@ -31,9 +31,8 @@
 package bingo;
 
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  *<p>Class that calculates statistic tests: Hypergeometric and Binomial. This class
@@ -44,26 +43,53 @@ import java.util.Map;
  */
 public class StatisticTestCalculate extends CalculateTestTask{
     /**
-     * hashmap with as values the values of small n ; keys = GO labels.
+     * counts of x, X, n and N of tested terms
+     */
+    private DistributionCount dc;
+    /**
+     * hashmap with as values the values of small n ; keys = GO labels. Built on request
      */
     private Map<Integer, Integer> mapSmallN;
     /**
-     * hashmap with as values the values of small x ; keys = GO labels.
+     * hashmap with as values the values of small x ; keys = GO labels. Built on request
      */
     private Map<Integer, Integer> mapSmallX;
     /**
-     * hashmap containing values for big N.
+     * hashmap containing values for big N. Built on request
      */
     private Map<Integer, Integer> mapBigN;
     /**
-     * hashmap containing values for big X.
+     * hashmap containing values for big X. Built on request
      */
     private Map<Integer, Integer> mapBigX;
     /**
      * hashmap with the hypergeometric distribution results as values ; keys =
-     * GO labels
+     * GO labels. Built from {@link #termIds} and {@link #pValues} on first request
      */
     private Map<Integer, String> statisticTestMap;
+
+    /**
+     * ids of tested terms
+     */
+    private int[] termIds;
+
+    /**
+     * dense indices of tested terms in the ontology, parallel to {@link #termIds}
+     */
+    private int[] termIndices;
+
+    /**
+     * values of small x, small n, big X and big N, parallel to {@link #termIds}
+     */
+    private int[] smallX;
+    private int[] smallN;
+    private int[] bigX;
+    private int[] bigN;
+
+    /**
+     * p values of tested terms, parallel to {@link #termIds}
+     */
+    private double[] pValues;
     
     /**
      * <p>Name of distribution</p>
@@ -75,74 +101,398 @@ public class StatisticTestCalculate extends CalculateTestTask{
      */
     private boolean isOver;
 
+    /**
+     * <p>table of ln(k!) shared by all clusters</p>
+     */
+    private LogFactorial logFactorial;
+
+    /**
+     * <p>p values shared by all clusters. May be null</p>
+     */
+    private PValueCache pValueCache;
+
+    /**
+     * <p>pool used to test terms of one cluster in parallel. If null terms are tested on the calling thread</p>
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * <p>probabilities of success of the binomial test shared by all clusters. May be null</p>
+     */
+    private SuccessProbabilityCache successProbabilities;
+
+    /**
+     * <p>significance level used to prune untestable terms. Negative if terms are not pruned</p>
+     */
+    private double pruningAlpha = -1;
+
+    /**
+     * <p>if true terms are pruned at level alpha / K (Tarone), otherwise at level alpha</p>
+     */
+    private boolean tarone;
+
+    /**
+     * <p>number of pruned terms</p>
+     */
+    private int prunedTerms;
+
+    /**
+     * <p>Tarone correction factor K</p>
+     */
+    private int taroneFactor;
+
     
     public StatisticTestCalculate(DistributionCount dc, String distributionType, boolean isOver){
         dc.calculate();
-        this.mapSmallN = dc.getMapSmallN();
-        this.mapSmallX = dc.getMapSmallX();
-        this.mapBigN = dc.getMapBigN();
-        this.mapBigX = dc.getMapBigX();
+        this.dc = dc;
         this.distributionType = distributionType;
         this.isOver = isOver;
     }
+
+    /**
+     * <p>Constructor</p>
+     * @param dc counts of x, X, n and N
+     * @param distributionType name of statistical test
+     * @param isOver over- or under-representation
+     * @param logFactorial table of ln(k!) used by the hypergeometric test. May be null
+     */
+    public StatisticTestCalculate(DistributionCount dc, String distributionType, boolean isOver,
+                                  LogFactorial logFactorial){
+        this(dc, distributionType, isOver);
+        this.logFactorial = logFactorial;
+    }
+
+    /**
+     * <p>Constructor</p>
+     * @param dc counts of x, X, n and N
+     * @param distributionType name of statistical test
+     * @param isOver over- or under-representation
+     * @param logFactorial table of ln(k!) used by the hypergeometric test. May be null
+     * @param pValueCache p values already calculated for other clusters. May be null
+     */
+    public StatisticTestCalculate(DistributionCount dc, String distributionType, boolean isOver,
+                                  LogFactorial logFactorial, PValueCache pValueCache){
+        this(dc, distributionType, isOver, logFactorial);
+        this.pValueCache = pValueCache;
+    }
+
+    /**
+     * <p>Constructor</p>
+     * @param dc counts of x, X, n and N
+     * @param distributionType name of statistical test
+     * @param isOver over- or under-representation
+     * @param logFactorial table of ln(k!) used by the hypergeometric test. May be null
+     * @param pValueCache p values already calculated for other clusters. May be null
+     * @param pool pool used to test terms in parallel. May be null
+     */
+    public StatisticTestCalculate(DistributionCount dc, String distributionType, boolean isOver,
+                                  LogFactorial logFactorial, PValueCache pValueCache, ForkJoinPool pool){
+        this(dc, distributionType, isOver, logFactorial, pValueCache);
+        this.pool = pool;
+    }
+
+    /**
+     * <p>Constructor that reads test, representation and objects shared by all clusters from descriptor</p>
+     * @param dc counts of x, X, n and N
+     * @param descriptor description of the statistical test
+     * @param logFactorial table of ln(k!). May be null
+     */
+    public StatisticTestCalculate(DistributionCount dc, StatisticsDescriptor descriptor, LogFactorial logFactorial){
+        this(dc, descriptor.getTest(), descriptor.getRepresentation().equals(Constants.OVERSTRING.getConstant()),
+                logFactorial, descriptor.getPValueCache(), descriptor.getForkJoinPool());
+        this.successProbabilities = descriptor.getSuccessProbabilities();
+    }
     
 
     @Override
     public void calculate() {
-        IDistribution hd;
-        statisticTestMap = new HashMap<>();
-
-        HashSet<Integer> set = new HashSet<>(mapSmallX.keySet());
-        
-        Iterator<Integer> iterator = set.iterator();
-        Integer id;
-        Integer smallXvalue;
-        Integer smallNvalue;
-        Integer bigXvalue;
-        Integer bigNvalue;
-        
-        while (iterator.hasNext()) {
-            id = new Integer(iterator.next().toString());
-            
-            smallXvalue = mapSmallX.get(id);
-            smallNvalue = mapSmallN.get(id);
-            bigXvalue = mapBigX.get(id);
-            bigNvalue = mapBigN.get(id);
-            
-            if(distributionType.equalsIgnoreCase("Hypergeometric test")){
-                hd = new HypergeometricDistribution(smallXvalue, bigXvalue, smallNvalue, bigNvalue, isOver);
-            } else if(distributionType.equalsIgnoreCase("Binomial test")){
-                hd = new BinomialDistribution(smallXvalue, bigXvalue, smallNvalue, bigNvalue, isOver);
-            } else{
-                throw new IllegalArgumentException("Supported tests:\n1. Hypergeometric test\n2. Binomial test\n");
+        statisticTestMap = null;
+        mapSmallX = null;
+        mapSmallN = null;
+        mapBigX = null;
+        mapBigN = null;
+
+        //arrays of dc are shared, pruning replaces them with copies
+        termIds = dc.getTermIds();
+        termIndices = dc.getTermIndices();
+        smallX = dc.getSmallX();
+        smallN = dc.getSmallN();
+        bigX = dc.getBigX();
+        bigN = dc.getBigN();
+        pValues = new double[termIds.length];
+        taroneFactor = termIds.length;
+        prunedTerms = 0;
+        if (pruningAlpha >= 0) {
+            prune();
+        }
+        //every term is tested independently, so terms may be split among threads
+        RangeTask.forEach(pool, termIds.length, i -> pValues[i] = test(i));
+    }
+
+    /**
+     * <p>Sets pruning of terms that can not reach significance. Pruned terms are neither tested nor counted by
+     * corrections.</p>
+     * @param alpha significance level
+     * @param tarone if true terms are pruned at level alpha / K where K is {@link TaroneBonferroni} correction
+     * factor, otherwise terms whose minimum achievable p value is not below alpha are pruned
+     */
+    public void setPruning(double alpha, boolean tarone) {
+        this.pruningAlpha = alpha;
+        this.tarone = tarone;
+    }
+
+    //removes untestable terms from termIds
+    private void prune() {
+        final double[] minimum = new double[termIds.length];
+        RangeTask.forEach(pool, termIds.length, i -> minimum[i] = createDistribution(i, smallX[i])
+                .calculateMinimumProbability());
+        if (tarone) {
+            taroneFactor = TaroneBonferroni.calculateFactor(minimum, pruningAlpha);
+        }
+        int[] testable = new int[termIds.length];
+        int kept = 0;
+        for (int i = 0; i < termIds.length; i++) {
+            if (isTestable(minimum[i])) {
+                testable[kept] = i;
+                kept++;
+            }
+        }
+        prunedTerms = termIds.length - kept;
+        termIds = select(termIds, testable, kept);
+        termIndices = select(termIndices, testable, kept);
+        smallX = select(smallX, testable, kept);
+        smallN = select(smallN, testable, kept);
+        bigX = select(bigX, testable, kept);
+        bigN = select(bigN, testable, kept);
+        pValues = new double[kept];
+        if (!tarone) {
+            taroneFactor = kept;
+        }
+    }
+
+    //true if a term with the minimum achievable p value is not pruned
+    private boolean isTestable(double minimum) {
+        if (pruningAlpha < 0) {
+            return true;
+        }
+        return tarone ? minimum <= pruningAlpha / taroneFactor : minimum < pruningAlpha;
+    }
+
+    /**
+     * <p>Terms that can be tested in a random sample of X genes of the reference set: every term with n &gt; 0 that
+     * is not pruned by the rule applied to the tested terms. A random sample may hit terms that the cluster did not,
+     * so permutation tests use this family instead of {@link #getTermIndices()}</p>
+     * @param bigXvalue size of the sample
+     * @param bigNvalue number of classified reference genes
+     * @return dense term indices in ascending order
+     */
+    int[] getNullTermIndices(final int bigXvalue, final int bigNvalue) {
+        final int[] counts = dc.getSmallNCounts();
+        final boolean[] testable = new boolean[counts.length];
+        RangeTask.forEach(pool, counts.length, t -> testable[t] = counts[t] > 0 && isTestable(
+                createDistribution(0, bigXvalue, counts[t], bigNvalue).calculateMinimumProbability()));
+        int size = 0;
+        for (boolean value : testable) {
+            if (value) {
+                size++;
+            }
+        }
+        int[] terms = new int[size];
+        int k = 0;
+        for (int t = 0; t < counts.length; t++) {
+            if (testable[t]) {
+                terms[k++] = t;
             }
-            statisticTestMap.put(id, hd.calculateDistribution());
-            
         }
+        return terms;
+    }
+
+    //values at positions 0 ... size - 1
+    private static int[] select(int[] values, int[] positions, int size) {
+        int[] selected = new int[size];
+        for (int i = 0; i < size; i++) {
+            selected[i] = values[positions[i]];
+        }
+        return selected;
+    }
+
+    /**
+     * @param index index of the term in {@link #termIds}
+     * @return p value of the term
+     */
+    private double test(int index) {
+        return calculateProbability(index, smallX[index]);
+    }
+
+    /**
+     * @param index index of the term in {@link #termIds}
+     * @param smallXvalue number of genes annotated to the term
+     * @return p value
+     */
+    private double calculateProbability(int index, int smallXvalue) {
+        IDistribution hd = createDistribution(index, smallXvalue);
+        return pValueCache == null ? hd.calculateProbability()
+                : pValueCache.getProbability(smallXvalue, bigX[index], smallN[index], bigN[index], hd);
+    }
+
+    /**
+     * <p>p value of a term in a random sample. Used by permutation tests, which keep their own cache so that null
+     * p values do not evict the values shared by clusters</p>
+     * @param smallXvalue number of genes annotated to the term in the sample
+     * @param bigXvalue size of the sample
+     * @param smallNvalue number of reference genes annotated to the term
+     * @param bigNvalue number of classified reference genes
+     * @param cache p values of random samples. May be null
+     * @return p value
+     */
+    double calculateProbability(int smallXvalue, int bigXvalue, int smallNvalue, int bigNvalue, PValueCache cache) {
+        IDistribution hd = createDistribution(smallXvalue, bigXvalue, smallNvalue, bigNvalue);
+        return cache == null ? hd.calculateProbability()
+                : cache.getProbability(smallXvalue, bigXvalue, smallNvalue, bigNvalue, hd);
+    }
+
+    /**
+     * @param index index of the term in {@link #termIds}
+     * @param smallXvalue number of genes annotated to the term in the sample
+     * @return test of the term
+     */
+    private IDistribution createDistribution(int index, int smallXvalue) {
+        return createDistribution(smallXvalue, bigX[index], smallN[index], bigN[index]);
+    }
+
+    /**
+     * @return test of a term with the given x, X, n and N
+     */
+    private IDistribution createDistribution(int smallXvalue, int bigXvalue, int smallNvalue, int bigNvalue) {
+        IDistribution hd;
+
+        if(distributionType.equalsIgnoreCase("Hypergeometric test")){
+            hd = new HypergeometricDistribution(smallXvalue, bigXvalue, smallNvalue, bigNvalue, isOver,
+                    logFactorial);
+        } else if(distributionType.equalsIgnoreCase("Binomial test")){
+            hd = new BinomialDistribution(smallXvalue, bigXvalue, smallNvalue, bigNvalue, isOver, logFactorial,
+                    successProbabilities);
+        } else{
+            throw new IllegalArgumentException("Supported tests:\n1. Hypergeometric test\n2. Binomial test\n");
+        }
+        return hd;
     }
 
     @Override
     public Map<Integer, String> getTestMap() {
+        if (statisticTestMap == null && termIds != null) {
+            statisticTestMap = new HashMap<>();
+            for (int i = 0; i < termIds.length; i++) {
+                statisticTestMap.put(termIds[i], Double.toString(pValues[i]));
+            }
+        }
         return statisticTestMap;
     }
 
+    @Override
+    public int[] getTermIds() {
+        return termIds;
+    }
+
+    @Override
+    public double[] getPValues() {
+        return pValues;
+    }
+
+    /**
+     * @return dense term indices of classifications of reference nodes in the iteration order of the reference set
+     */
+    int[][] getReferenceClassifications() {
+        return dc.getReferenceClassifications();
+    }
+
+    /**
+     * @return small n of every term of the ontology, indexed by dense term index
+     */
+    int[] getSmallNCounts() {
+        return dc.getSmallNCounts();
+    }
+
+    /**
+     * @return genes of terms shared by all clusters. Null if classifications of nodes are counted
+     */
+    TermGeneIndex getTermGeneIndex() {
+        return dc.getTermGeneIndex();
+    }
+
+    /**
+     * @return bitmap of classified reference genes of {@link #getTermGeneIndex()}. Null if there is no index
+     */
+    long[] getReferenceGenes() {
+        return dc.getReferenceGenes();
+    }
+
+    /**
+     * @return dense indices of tested terms in the ontology, parallel to {@link #getTermIds()}
+     */
+    int[] getTermIndices() {
+        return termIndices;
+    }
+
+    @Override
+    int[] getSmallX() {
+        return smallX;
+    }
+
+    @Override
+    int[] getSmallN() {
+        return smallN;
+    }
+
+    @Override
+    int[] getBigX() {
+        return bigX;
+    }
+
+    @Override
+    int[] getBigN() {
+        return bigN;
+    }
+
+    @Override
+    public int getNumberOfPrunedTerms() {
+        return prunedTerms;
+    }
+
+    @Override
+    public int getTaroneFactor() {
+        return taroneFactor;
+    }
+
     @Override
     Map<Integer, Integer> getMapSmallX() {
+        if (mapSmallX == null && termIds != null) {
+            mapSmallX = toMap(termIds, smallX);
+        }
         return mapSmallX;
     }
 
     @Override
     Map<Integer, Integer> getMapSmallN() {
+        if (mapSmallN == null && termIds != null) {
+            mapSmallN = toMap(termIds, smallN);
+        }
         return mapSmallN;
     }
 
     @Override
     Map<Integer, Integer> getMapBigX() {
+        if (mapBigX == null && termIds != null) {
+            mapBigX = toMap(termIds, bigX);
+        }
         return mapBigX;
     }
 
     @Override
     Map<Integer, Integer> getMapBigN() {
+        if (mapBigN == null && termIds != null) {
+            mapBigN = toMap(termIds, bigN);
+        }
         return mapBigN;
     }
 
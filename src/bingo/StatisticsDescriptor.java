@@ -1,5 +1,7 @@
 package bingo;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * <p>Class that contains data necessary to describe statistical test</p>
  */
@@ -14,6 +16,19 @@ public class StatisticsDescriptor {
     private String pValue;
 
     private String referenceSet;
+    //p values shared by all clusters of a run
+    private PValueCache pValueCache;
+    //probabilities of success of the binomial test shared by all clusters of a run
+    private SuccessProbabilityCache successProbabilities;
+    //pool used to split work of a single cluster among threads; null for serial mode
+    private ForkJoinPool forkJoinPool;
+    //prune terms that can not reach significance before testing
+    private boolean pruning;
+    //number of random samples and seed of the empirical FDR correction
+    private int numberOfPermutations = PermutationFDR.DEFAULT_NUMBER_OF_PERMUTATIONS;
+    private long permutationSeed;
+    //the largest number of terms written per cluster; 0 writes all significant terms
+    private int topLimit;
 
     public String getTest() {
         return test;
@@ -54,4 +69,60 @@ public class StatisticsDescriptor {
     public void setReferenceSet(String referenceSet) {
         this.referenceSet = referenceSet;
     }
+
+    public PValueCache getPValueCache() {
+        return pValueCache;
+    }
+
+    public void setPValueCache(PValueCache pValueCache) {
+        this.pValueCache = pValueCache;
+    }
+
+    public SuccessProbabilityCache getSuccessProbabilities() {
+        return successProbabilities;
+    }
+
+    public void setSuccessProbabilities(SuccessProbabilityCache successProbabilities) {
+        this.successProbabilities = successProbabilities;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public boolean isPruning() {
+        return pruning;
+    }
+
+    public void setPruning(boolean pruning) {
+        this.pruning = pruning;
+    }
+
+    public int getNumberOfPermutations() {
+        return numberOfPermutations;
+    }
+
+    public void setNumberOfPermutations(int numberOfPermutations) {
+        this.numberOfPermutations = numberOfPermutations;
+    }
+
+    public long getPermutationSeed() {
+        return permutationSeed;
+    }
+
+    public void setPermutationSeed(long permutationSeed) {
+        this.permutationSeed = permutationSeed;
+    }
+
+    public int getTopLimit() {
+        return topLimit;
+    }
+
+    public void setTopLimit(int topLimit) {
+        this.topLimit = topLimit;
+    }
 }
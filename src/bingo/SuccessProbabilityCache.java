@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Probability of success p = n / N of the binomial test together with ln(p) and ln(1 - p). The values depend only
+ * on the term count n and the size of the reference set N, so they are shared by all clusters of a run that use the
+ * same reference set.</p>
+ *
+ * @version %I% %G%
+ */
+public final class SuccessProbabilityCache {
+
+    private final ConcurrentHashMap<Long, double[]> probabilities = new ConcurrentHashMap<>();
+
+    /**
+     * @param n number of successes in population
+     * @param bigN population size
+     * @return array {p, ln(p), ln(1 - p)}. The array must not be modified
+     */
+    double[] get(int n, int bigN) {
+        return probabilities.computeIfAbsent(((long) n << 32) | (bigN & 0xffffffffL), key -> create(n, bigN));
+    }
+
+    static double[] create(int n, int bigN) {
+        double p = n * 1.0 / bigN;
+        return new double[]{p, Math.log(p), Math.log1p(-p)};
+    }
+
+    /**
+     * @return number of cached probabilities
+     */
+    public int size() {
+        return probabilities.size();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>Dictionary of gene and protein identifiers. Every identifier seen while the annotation is parsed is interned
+ * to an int id 0 ... size() - 1 in the order of first appearance, so downstream structures ({@link Alias},
+ * {@link TermGeneIndex}) keep ints instead of strings and every identifier is stored once.</p>
+ * <p>Ids are kept in an open addressing hash table of ints. The table is filled by one thread while the
+ * annotation is parsed and afterwards it is only read, so it can be shared by all threads.</p>
+ *
+ * @version %I% %G%
+ */
+public final class SymbolTable {
+
+    private static final int EMPTY = -1;
+
+    //identifiers by id
+    private String[] symbols = new String[16];
+
+    private int size;
+
+    //ids of identifiers, EMPTY for free slots; length is a power of two
+    private int[] slots = newSlots(32);
+
+    /**
+     * @param symbol identifier
+     * @return id of the identifier; a new id if the identifier has not been seen yet
+     */
+    public int intern(String symbol) {
+        int slot = find(symbol);
+        if (slots[slot] != EMPTY) {
+            return slots[slot];
+        }
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, 2 * size);
+        }
+        symbols[size] = symbol;
+        slots[slot] = size;
+        size++;
+        if (2 * size > slots.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    /**
+     * <p>Interns ASCII bytes without creating a string unless the identifier has not been seen yet</p>
+     * @param bytes buffer holding the identifier
+     * @param start offset of the first byte
+     * @param end offset after the last byte
+     * @param upperCase true to intern the identifier in upper case
+     * @return id of the identifier; a new id if the identifier has not been seen yet
+     */
+    int intern(ByteBuffer bytes, int start, int end, boolean upperCase) {
+        int hash = 0;
+        for (int p = start; p < end; p++) {
+            hash = 31 * hash + byteAt(bytes, p, upperCase);
+        }
+        int mask = slots.length - 1;
+        int slot = mix(hash) & mask;
+        while (slots[slot] != EMPTY) {
+            if (equals(symbols[slots[slot]], bytes, start, end, upperCase)) {
+                return slots[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) byteAt(bytes, start + i, upperCase);
+        }
+        return intern(new String(chars));
+    }
+
+    private static int byteAt(ByteBuffer bytes, int offset, boolean upperCase) {
+        byte b = bytes.get(offset);
+        return upperCase ? GafTokenizer.toUpperCase(b) : b;
+    }
+
+    private static boolean equals(String symbol, ByteBuffer bytes, int start, int end, boolean upperCase) {
+        if (symbol.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != byteAt(bytes, start + i, upperCase)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param symbol identifier
+     * @return id of the identifier, -1 if the identifier has not been interned
+     */
+    public int getId(String symbol) {
+        return slots[find(symbol)];
+    }
+
+    /**
+     * @param id id of an identifier
+     * @return the identifier
+     */
+    public String getSymbol(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown symbol id: " + id);
+        }
+        return symbols[id];
+    }
+
+    /**
+     * @return number of identifiers
+     */
+    public int size() {
+        return size;
+    }
+
+    //slot that holds symbol or the free slot where it belongs
+    private int find(String symbol) {
+        int mask = slots.length - 1;
+        int slot = mix(symbol.hashCode()) & mask;
+        while (slots[slot] != EMPTY && !symbols[slots[slot]].equals(symbol)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        slots = newSlots(2 * slots.length);
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(symbols[id].hashCode()) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private static int[] newSlots(int length) {
+        int[] slots = new int[length];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+
+    //spreads bits of String.hashCode, which are poor in the low bits for similar identifiers
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import java.util.Arrays;
+
+/**
+ * <p>Bonferroni correction over testable terms only (Tarone, 1990). A term is testable at level alpha / k if its
+ * minimum achievable p value is not above alpha / k. The correction factor K is the smallest k for which the number
+ * of terms testable at alpha / k is at most k. Terms that are not testable at alpha / K can not become significant,
+ * so they are pruned before testing and adjusted p value of a tested term is min(1, K * p).</p>
+ *
+ * @version %I% %G%
+ */
+public class TaroneBonferroni extends CalculateCorrectionTask {
+
+    /**
+     * correction factor K
+     */
+    private final int factor;
+
+    /**
+     * Constructor.
+     *
+     * @param termIds ids of tested terms
+     * @param pValues p values of tested terms
+     * @param factor correction factor K, see {@link #calculateFactor(double[], double)}
+     */
+    public TaroneBonferroni(int[] termIds, double[] pValues, int factor) {
+        super(termIds, pValues);
+        this.factor = factor;
+    }
+
+    /**
+     * @param minimumPValues minimum achievable p values of all terms
+     * @param alpha significance level
+     * @return the smallest k such that at most k terms have minimum achievable p value not above alpha / k
+     */
+    public static int calculateFactor(double[] minimumPValues, double alpha) {
+        double[] sorted = minimumPValues.clone();
+        Arrays.sort(sorted);
+        int k = 1;
+        while (countNotAbove(sorted, alpha / k) > k) {
+            k++;
+        }
+        return k;
+    }
+
+    //number of values <= threshold in sorted array
+    private static int countNotAbove(double[] sorted, double threshold) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] <= threshold) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param pValues raw p values
+     * @param order not needed by Bonferroni correction
+     * @return adjusted p values in the same order as pValues
+     */
+    @Override
+    public double[] adjust(double[] pValues, int[] order) {
+        double[] adjusted = new double[pValues.length];
+        for (int i = 0; i < pValues.length; i++) {
+            adjusted[i] = Math.min(1, factor * pValues[i]);
+        }
+        return adjusted;
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bingo;
+
+import ontology.Annotation;
+import ontology.Ontology;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * <p>Index of genes of every ontology term. Genes are the names that can be looked up in the {@link Alias} (the
+ * names of nodes in clusters and reference sets) and are numbered by their {@link SymbolTable} ids. The genes
+ * of a term are kept in a {@link CompressedBitSet}, indexed by the dense term index of the ontology
+ * ({@link Ontology#getTermIndex(int)}).</p>
+ * <p>A cluster is a plain bitmap of genes, so x of a term is popcount(term AND cluster). n for a reference set is
+ * counted the same way and the cardinality of a term is its n for all genes.</p>
+ * <p>The index is built once after the annotation is remapped ({@link AnnotationParser#getTermGeneIndex()}) and is
+ * not modified afterwards, so it is shared by all {@link BingoRunner} threads. It also serves as the cache of
+ * resolved classifications of input names ({@link #getNodeTerms(String)}).</p>
+ *
+ * @version %I% %G%
+ */
+public final class TermGeneIndex {
+
+    /**
+     * terms of a gene without annotation
+     */
+    static final int[] NO_TERMS = new int[0];
+
+    private final Ontology ontology;
+
+    private final Alias alias;
+
+    //genes of terms, by dense term index
+    private final CompressedBitSet[] termGenes;
+
+    //genes with at least one term
+    private final long[] classifiedGenes;
+
+    //dense indices of terms of genes in ascending order
+    private final int[][] geneTerms;
+
+    //mean number of terms of a classified gene
+    private final double meanGeneTerms;
+
+    /**
+     * <p>Constructor</p>
+     * @param annotation remapped annotation; classifications include all ancestors
+     * @param ontology ontology whose dense term indices index the terms
+     * @param alias gene name -> identifiers of the annotation
+     */
+    public TermGeneIndex(Annotation annotation, Ontology ontology, Alias alias) {
+        this.ontology = ontology;
+        this.alias = alias;
+        int numberOfGenes = alias.getSymbols().size();
+        classifiedGenes = new long[(numberOfGenes + 63) >>> 6];
+        geneTerms = new int[numberOfGenes][];
+        int[] termSizes = new int[ontology.size()];
+        long classifications = 0;
+        int classified = 0;
+        for (int gene = 0; gene < numberOfGenes; gene++) {
+            geneTerms[gene] = termIndices(annotation, ontology, alias, gene);
+            if (geneTerms[gene].length != 0) {
+                classifiedGenes[gene >>> 6] |= 1L << gene;
+                classifications += geneTerms[gene].length;
+                classified++;
+            }
+            for (int term : geneTerms[gene]) {
+                termSizes[term]++;
+            }
+        }
+        //genes are added in ascending order, so every list is sorted
+        int[][] termLists = new int[termSizes.length][];
+        for (int term = 0; term < termSizes.length; term++) {
+            termLists[term] = new int[termSizes[term]];
+            termSizes[term] = 0;
+        }
+        for (int gene = 0; gene < numberOfGenes; gene++) {
+            for (int term : geneTerms[gene]) {
+                termLists[term][termSizes[term]++] = gene;
+            }
+        }
+        meanGeneTerms = classified == 0 ? 0 : (double) classifications / classified;
+        termGenes = new CompressedBitSet[termLists.length];
+        for (int term = 0; term < termLists.length; term++) {
+            termGenes[term] = CompressedBitSet.of(termLists[term], termLists[term].length);
+            termLists[term] = null;
+        }
+    }
+
+    /**
+     * @param annotation annotation
+     * @param ontology ontology
+     * @param identifiers identifiers of a gene in the annotation. May be null
+     * @return distinct dense indices of terms of all identifiers in ascending order
+     */
+    static int[] termIndices(Annotation annotation, Ontology ontology, Set<String> identifiers) {
+        if (identifiers == null) {
+            return NO_TERMS;
+        }
+        int[] indices = NO_TERMS;
+        int size = 0;
+        for (String identifier : identifiers) {
+            IntBuffer goID = annotation.getClassificationsView(identifier);
+            indices = appendTermIndices(ontology, goID, indices, size);
+            size += goID.remaining();
+        }
+        return distinct(indices, size);
+    }
+
+    /**
+     * @param annotation annotation
+     * @param ontology ontology
+     * @param alias alias of the annotation
+     * @param name symbol id of a gene name
+     * @return distinct dense indices of terms of all identifiers of the name in ascending order
+     */
+    static int[] termIndices(Annotation annotation, Ontology ontology, Alias alias, int name) {
+        int[] indices = NO_TERMS;
+        int size = 0;
+        for (int i = 0; i < alias.getNumberOfIdentifiers(name); i++) {
+            IntBuffer goID = annotation.getClassificationsView(
+                    alias.getSymbols().getSymbol(alias.getIdentifier(name, i)));
+            indices = appendTermIndices(ontology, goID, indices, size);
+            size += goID.remaining();
+        }
+        return distinct(indices, size);
+    }
+
+    //appends dense indices of terms goID to indices[0 ... size - 1], growing the array if needed
+    private static int[] appendTermIndices(Ontology ontology, IntBuffer goID, int[] indices, int size) {
+        int length = goID.remaining();
+        if (size + length > indices.length) {
+            indices = Arrays.copyOf(indices, Math.max(2 * indices.length, size + length));
+        }
+        for (int t = 0; t < length; t++) {
+            int index = ontology.getTermIndex(goID.get(t));
+            if (index < 0) {
+                throw new IllegalStateException("Term " + goID.get(t) + " is not in the ontology");
+            }
+            indices[size + t] = index;
+        }
+        return indices;
+    }
+
+    //sorts indices[0 ... size - 1] and drops duplicates; identifiers of one gene may share terms
+    private static int[] distinct(int[] indices, int size) {
+        Arrays.sort(indices, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || indices[i] != indices[distinct - 1]) {
+                indices[distinct++] = indices[i];
+            }
+        }
+        return distinct == indices.length ? indices : Arrays.copyOf(indices, distinct);
+    }
+
+    /**
+     * @param nodes names of genes
+     * @return bitmap of genes of nodes that have at least one term
+     */
+    public long[] toBitmap(Collection<String> nodes) {
+        long[] bitmap = new long[classifiedGenes.length];
+        for (String node : nodes) {
+            int gene = getGeneIndex(node);
+            if (gene >= 0) {
+                bitmap[gene >>> 6] |= classifiedGenes[gene >>> 6] & (1L << gene);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * @param gene index of a gene
+     * @return dense indices of terms of the gene in ascending order. Empty if the gene is not classified
+     */
+    public int[] getGeneTerms(int gene) {
+        return geneTerms[gene];
+    }
+
+    /**
+     * @param termIndex dense index of a term
+     * @return genes of the term
+     */
+    public CompressedBitSet getTermGenes(int termIndex) {
+        return termGenes[termIndex];
+    }
+
+    /**
+     * <p>Classifications of an input name resolved through the alias and the annotation. They are resolved once
+     * per run, when the index is built, and are shared by every cluster and every stage (counting, selection of
+     * test data and output) instead of being looked up again as sets of strings.</p>
+     * @param node name of a gene
+     * @return distinct dense indices of terms of the gene in ascending order. Empty if the name is not known or
+     * not classified; the array is shared and must not be modified
+     */
+    public int[] getNodeTerms(String node) {
+        int gene = getGeneIndex(node);
+        return gene < 0 ? NO_TERMS : geneTerms[gene];
+    }
+
+    /**
+     * @param node name of a gene
+     * @return index of the gene, -1 if the name is not known
+     */
+    public int getGeneIndex(String node) {
+        return alias.getNameId(node);
+    }
+
+    /**
+     * @return number of genes
+     */
+    public int getNumberOfGenes() {
+        return geneTerms.length;
+    }
+
+    /**
+     * @return mean number of terms of a classified gene
+     */
+    public double getMeanGeneTerms() {
+        return meanGeneTerms;
+    }
+
+    /**
+     * @return number of terms
+     */
+    public int getNumberOfTerms() {
+        return termGenes.length;
+    }
+
+    /**
+     * @return ontology whose dense term indices index the terms
+     */
+    public Ontology getOntology() {
+        return ontology;
+    }
+}
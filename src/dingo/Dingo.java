@@ -14,6 +14,7 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import update.DiNGOFilesUpdater;
 
 /**
@@ -41,6 +42,8 @@ public final class Dingo {
                 params.getCorrectionTest());
         System.out.printf("%-30s%s%n", "Significance: ",
                 params.getSignificance());
+        System.out.printf("%-30s%s%n", "Pruning of untestable terms: ",
+                params.isPruning() ? "yes" : "no");
         System.out.printf("%-30s%s%n", "Namespace: ", params.getNameSpace());
         System.out.printf("%-30s%s%n", "Representation: ",
                 params.getOverOrUnder());
@@ -58,14 +61,17 @@ public final class Dingo {
      *
      * @param params instance of {@link BingoParameters} containing command line
      * arguments
+     * @param snapshotDirectory directory of snapshots of the parsed annotation
      * @return instance of {@link AnnotationParser}
      */
-    private AnnotationParser getAnnotationParser(BingoParameters params) {
+    private AnnotationParser getAnnotationParser(BingoParameters params, String snapshotDirectory) {
         //the followed code is part of Bingo's SettingsActionListener class
         Set<String> genes = new HashSet<>();
         AnnotationParser annParser = new AnnotationParser(genes, params.getDeleteCodes(),
                 params.getOntologyFile(), params.getAnnotationFile(),
                 params.getNameSpace(), params.getMappingFile());//params.initializeAnnotationParser();
+        annParser.setSnapshotDirectory(snapshotDirectory);
+        annParser.setParserThreads(params.getNumberOfUsedCores());
 
        
         if (annParser.getStatus()) {
@@ -88,6 +94,12 @@ public final class Dingo {
             descriptor.setRepresentation(params.getOverOrUnder());
             descriptor.setpValue(params.getSignificance().toString());
             descriptor.setReferenceSet(params.getReferenceSet());
+            descriptor.setPValueCache(new PValueCache(PValueCache.DEFAULT_CAPACITY));
+            descriptor.setSuccessProbabilities(new SuccessProbabilityCache());
+            descriptor.setPruning(params.isPruning());
+            descriptor.setNumberOfPermutations(params.getNumberOfPermutations());
+            descriptor.setPermutationSeed(params.getPermutationSeed());
+            descriptor.setTopLimit(params.getTopLimit());
 
             return descriptor;
     }
@@ -138,10 +150,15 @@ public final class Dingo {
         //default annotation file does not exist download it
         if (ontologyName.equalsIgnoreCase("GO")) {
             if (annotationFile == null) {
-                String fileString = config.getDirFiles()
+                annotationFile = config.getDirFiles()
                         + config.getAnnotationFileName();
-                int ln = fileString.length();
-                annotationFile = fileString.substring(0, ln - 3);
+                //gzipped annotation files are read directly; decompressed copy
+                //left by earlier versions is used if there is no gzipped one
+                String decompressedFile = annotationFile.endsWith(".gz")
+                        ? annotationFile.substring(0, annotationFile.length() - 3) : annotationFile;
+                if (!new File(annotationFile).exists() && new File(decompressedFile).exists()) {
+                    annotationFile = decompressedFile;
+                }
                 if (!new File(annotationFile).exists()) {
                     DiNGOFilesUpdater.main(new String[]{"update", "-f", "GO",
                         "-d", "2", "-sp", species});
@@ -186,7 +203,7 @@ public final class Dingo {
             return;
         }
 
-        AnnotationParser annParser = sa.getAnnotationParser(params);
+        AnnotationParser annParser = sa.getAnnotationParser(params, config.getDirFiles());
         StatisticsDescriptor descriptor = sa.getStatisticsDescriptor(params);
         String[] dataSets = getDataSets(params.getTextInput());
 
@@ -194,6 +211,10 @@ public final class Dingo {
 
         int numThreads = params.getNumberOfUsedCores();
         int numberOfSets = dataSets.length;
+        //a single cluster can't be split among tasks, so its terms and genes are split among threads
+        if (numThreads > 1 && (numberOfSets == 1 || !params.getClusterName().equals("batch"))) {
+            descriptor.setForkJoinPool(new ForkJoinPool(numThreads));
+        }
         //if batch mode is on use multi-threading
         if (params.getClusterName().equals("batch")) {
 
@@ -231,9 +252,14 @@ public final class Dingo {
             System.out.println();
         }
 
+        if (descriptor.getForkJoinPool() != null) {
+            descriptor.getForkJoinPool().shutdown();
+        }
+
         Instant end = Instant.now();
         long execTime = Duration.between(start, end).getSeconds();
         System.out.println("");
+        System.out.println("P-value cache: " + descriptor.getPValueCache());
         System.out.println("Execution time: " + execTime + " s");
     }
 
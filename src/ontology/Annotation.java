@@ -38,6 +38,7 @@ package ontology;
 
 import java.io.Serializable;
 
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.ArrayList;
@@ -71,6 +72,10 @@ import java.util.ArrayList;
  * provides a means to richly and flexibly describe an object.
  * Modified by Radoslav Davidović 2018
  * Vector replaced by ArrayList
+ * <p>
+ * Classifications are collected by an {@link AnnotationTable.Builder} and frozen into an {@link AnnotationTable}
+ * (compressed sparse row form) on the first read, so {@link #add(String, int)} no longer searches the list of
+ * classifications of an entity. Classifications of an entity are returned in ascending order.
  */
 public class Annotation implements Serializable {
 
@@ -78,7 +83,8 @@ public class Annotation implements Serializable {
     protected String curator;
     protected String species;
     protected String type;
-    private HashMap<String, ArrayList<Integer>> hash; // (name, ArrayList) pairs, the ArrayList contains Integers
+    private AnnotationTable.Builder builder; // collects (name, classification) pairs until the first read
+    private volatile AnnotationTable table; // frozen classifications, null while pairs are added
 
     /**
      * Creates a new Annotation object.
@@ -92,7 +98,7 @@ public class Annotation implements Serializable {
         this.species = species;
         this.type = type;
         this.curator = ontology.getCurator();
-        hash = new HashMap<>();
+        builder = new AnnotationTable.Builder();
     }
 
     /**
@@ -106,16 +112,55 @@ public class Annotation implements Serializable {
         this.curator = curator;
         this.species = species;
         this.type = type;
-        hash = new HashMap<>();
+        builder = new AnnotationTable.Builder();
     }
 
     /**
-     * DOCUMENT ME!
+     * Creates a new Annotation object with frozen classifications.
      *
-     * @return DOCUMENT ME!
+     * @param species species
+     * @param type type
+     * @param curator curator
+     * @param table classifications of entities
+     */
+    public Annotation(String species, String type, String curator, AnnotationTable table) {
+        this.curator = curator;
+        this.species = species;
+        this.type = type;
+        this.table = table;
+    }
+
+    /**
+     * @return copy of the classifications of every entity. Changes of the map are not reflected in the annotation
      */
     public HashMap<String, ArrayList<Integer>> getMap() {
-        return hash;
+        AnnotationTable frozen = getTable();
+        HashMap<String, ArrayList<Integer>> map = new HashMap<>(2 * frozen.count());
+        for (int index = 0; index < frozen.count(); index++) {
+            ArrayList<Integer> classifications = new ArrayList<>(frozen.getNumberOfClassifications(index));
+            for (int i = 0; i < frozen.getNumberOfClassifications(index); i++) {
+                classifications.add(frozen.getClassification(index, i));
+            }
+            map.put(frozen.getName(index), classifications);
+        }
+        return map;
+    }
+
+    /**
+     * @return classifications of all entities, frozen on the first call after entities were added
+     */
+    public AnnotationTable getTable() {
+        AnnotationTable frozen = table;
+        if (frozen == null) {
+            synchronized (this) {
+                if (table == null) {
+                    table = builder.build();
+                    builder = null;
+                }
+                frozen = table;
+            }
+        }
+        return frozen;
     }
 
     /**
@@ -184,21 +229,13 @@ public class Annotation implements Serializable {
      * @param name usually an ORF name, a unique identifier for this species
      * @param classificationID a pointer into the ontology hierarchy
      */
-    public void add(String name, int classificationID) {
-        ArrayList<Integer> classifications;
-
-        if (hash.containsKey(name)) {
-            classifications = hash.get(name);
-        } else {
-            classifications = new ArrayList<>();
-            hash.put(name, classifications);
-        }
-
-        Integer classificationInteger = classificationID;
-
-        if (!classifications.contains(classificationInteger)) {
-            classifications.add(classificationID);
+    public synchronized void add(String name, int classificationID) {
+        if (table != null) {
+            // entities added after a read: start again from the frozen classifications
+            builder = new AnnotationTable.Builder(table);
+            table = null;
         }
+        builder.add(name, classificationID);
     }
 
     /**
@@ -207,7 +244,7 @@ public class Annotation implements Serializable {
      * @return
      */
     public String[] getNames() {
-        return (String[]) hash.keySet().toArray(new String[0]);
+        return getTable().getNames();
     }
 
     /**
@@ -215,23 +252,7 @@ public class Annotation implements Serializable {
      * @return 
      */
     public int[] getClassifications() {
-        ArrayList<Integer>[] arrayOfIntegerArrayLists = hash.values().toArray(new ArrayList[0]);
-
-        ArrayList<Integer> collector = new ArrayList<>();
-
-        for (int v = 0; v < arrayOfIntegerArrayLists.length; v++) {
-            ArrayList<Integer> vec = arrayOfIntegerArrayLists[v];
-
-            collector.addAll(vec);
-        } // for v
-
-        int[] result = new int[collector.size()];
-
-        for (int i = 0; i < result.length; i++) {
-            result[i] = collector.get(i);
-        }
-        
-        return result;
+        return getTable().getClassifications();
     }
 
     /**
@@ -240,18 +261,16 @@ public class Annotation implements Serializable {
      * @return 
      */
     public int[] getClassifications(String name) {
-        if (!hash.containsKey(name)) {
-            return new int[0];
-        }
-
-        ArrayList<Integer> classifications = hash.get(name);
-        int[] result = new int[classifications.size()];
-
-        for (int i = 0; i < result.length; i++) {
-            result[i] = classifications.get(i);
-        }
+        return getTable().getClassifications(name);
+    }
 
-        return result;
+    /**
+     * all of the ontology identifiers registered for the specified entity, without copying
+     * @param name
+     * @return read-only view of the identifiers in ascending order
+     */
+    public IntBuffer getClassificationsView(String name) {
+        return getTable().getClassificationsView(name);
     }
 
     /**
@@ -261,11 +280,12 @@ public class Annotation implements Serializable {
      * @return 
      */
     public ArrayList<Integer> getClassificationsArrayList(String name) {
-        if (!hash.containsKey(name)) {
-            return new ArrayList<>();
-        } else {
-            return hash.get(name);
+        int[] classifications = getClassifications(name);
+        ArrayList<Integer> list = new ArrayList<>(classifications.length);
+        for (int classification : classifications) {
+            list.add(classification);
         }
+        return list;
     }
 
     /**
@@ -309,7 +329,7 @@ public class Annotation implements Serializable {
      * total number of entities, usually ORFs.
      */
     public int count() {
-        return hash.size();
+        return getTable().count();
     }
 
     /**
@@ -318,20 +338,13 @@ public class Annotation implements Serializable {
      * reflecting the multiple roles of many biological entities.
      */
     public int size() {
-        String[] names = getNames();
-        int total = 0;
-
-        for (String name : names) {
-            total += hash.get(name).size();
-        }
-
-        return total;
+        return getTable().size();
     }
 
     /**
-     * get all of the full paths (as ints) from the ontology for all of the
-     * currently annotated entities. then traverse this (possibly large) list
-     * and return the longest path.
+     * length of the longest path from the ontology for all of the currently
+     * annotated entities, read from the depths precomputed by the ontology
+     * ({@link Ontology#getMaxDepth(int)}) instead of enumerating the paths.
      */
     public int maxDepth() {
         if (ontology == null) {
@@ -342,20 +355,14 @@ public class Annotation implements Serializable {
         int max = 0;
 
         for (int i = 0; i < classifications.length; i++) {
-            int[][] paths = ontology.getAllHierarchyPaths(classifications[i]);
-
-            for (int p = 0; p < paths.length; p++) {
-                if (paths[p].length > max) {
-                    max = paths[p].length;
-                }
-            }
+            max = Math.max(max, ontology.getMaxDepth(classifications[i]));
         } // for i
 
         return max;
     }
 
     public HashMap<String, ArrayList<Integer>> getHash() {
-        return hash;
+        return getMap();
     }
     
    
@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ontology;
+
+import java.io.Serializable;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Frozen classifications of an {@link Annotation} in compressed sparse row form. Names are numbered
+ * 0 ... count() - 1 in the order in which they were first added; the classifications of name k are
+ * values[offsets[k]] ... values[offsets[k + 1] - 1], distinct and in ascending order.</p>
+ * <p>A table is built once by a {@link Builder} and is not modified afterwards, so it is shared by all threads.
+ * Classifications are read through views ({@link #getClassificationsView(int)}) or by position, without
+ * copying.</p>
+ *
+ * @version %I% %G%
+ */
+public final class AnnotationTable implements Serializable {
+
+    private static final int[] NO_CLASSIFICATIONS = new int[0];
+
+    private final String[] names;
+
+    //name -> index of name
+    private final Map<String, Integer> nameIndex;
+
+    //start of classifications of every name, length names.length + 1
+    private final int[] offsets;
+
+    private final int[] values;
+
+    private AnnotationTable(String[] names, Map<String, Integer> nameIndex, int[] offsets, int[] values) {
+        this.names = names;
+        this.nameIndex = nameIndex;
+        this.offsets = offsets;
+        this.values = values;
+    }
+
+    /**
+     * <p>Table from arrays of an existing table, e.g. read from a snapshot</p>
+     * @param names names of entities, distinct
+     * @param offsets start of classifications of every name, length names.length + 1
+     * @param values classifications of names, ascending and distinct for every name
+     * @return the table; arrays are not copied
+     * @throws IllegalArgumentException if lengths of arrays do not match
+     */
+    public static AnnotationTable of(String[] names, int[] offsets, int[] values) {
+        if (offsets.length != names.length + 1 || offsets[0] != 0 || offsets[names.length] != values.length) {
+            throw new IllegalArgumentException("Offsets do not match names and classifications");
+        }
+        Map<String, Integer> nameIndex = new HashMap<>(2 * names.length);
+        for (int index = 0; index < names.length; index++) {
+            nameIndex.put(names[index], index);
+        }
+        return new AnnotationTable(names, nameIndex, offsets, values);
+    }
+
+    /**
+     * <p>Merges tables built from consecutive parts of a file into the table of the whole file. Names are numbered
+     * in the order in which they first appear in the tables; the sorted classifications a name has in several
+     * tables are merged, without sorting them again.</p>
+     * @param tables tables in the order of the parts of the file
+     * @return the merged table
+     */
+    public static AnnotationTable merge(List<AnnotationTable> tables) {
+        Map<String, Integer> nameIndex = new HashMap<>();
+        int[][] globalIndices = new int[tables.size()][];
+        int[] runs = new int[16];
+        int total = 0;
+        for (int k = 0; k < tables.size(); k++) {
+            AnnotationTable table = tables.get(k);
+            globalIndices[k] = new int[table.count()];
+            for (int index = 0; index < table.count(); index++) {
+                Integer global = nameIndex.get(table.names[index]);
+                if (global == null) {
+                    global = nameIndex.size();
+                    nameIndex.put(table.names[index], global);
+                    if (global + 1 >= runs.length) {
+                        runs = Arrays.copyOf(runs, 2 * runs.length);
+                    }
+                }
+                globalIndices[k][index] = global;
+                runs[global + 1]++;
+            }
+            total += table.size();
+        }
+        int count = nameIndex.size();
+        String[] names = new String[count];
+        //runs of every name in the order of the tables: table in the high and index in the low 32 bits
+        for (int g = 0; g < count; g++) {
+            runs[g + 1] += runs[g];
+        }
+        long[] runList = new long[runs[count]];
+        int[] next = Arrays.copyOf(runs, count);
+        for (int k = 0; k < tables.size(); k++) {
+            for (int index = 0; index < globalIndices[k].length; index++) {
+                int global = globalIndices[k][index];
+                if (names[global] == null) {
+                    names[global] = tables.get(k).names[index];
+                }
+                runList[next[global]++] = ((long) k << 32) | index;
+            }
+        }
+        int[] offsets = new int[count + 1];
+        int[] values = new int[total];
+        int[] cursors = new int[tables.size()];
+        int[] ends = new int[tables.size()];
+        int n = 0;
+        for (int g = 0; g < count; g++) {
+            int firstRun = runs[g];
+            int lastRun = runs[g + 1];
+            if (lastRun - firstRun == 1) {
+                AnnotationTable table = tables.get((int) (runList[firstRun] >>> 32));
+                int index = (int) runList[firstRun];
+                int length = table.offsets[index + 1] - table.offsets[index];
+                System.arraycopy(table.values, table.offsets[index], values, n, length);
+                n += length;
+            } else {
+                for (int r = firstRun; r < lastRun; r++) {
+                    AnnotationTable table = tables.get((int) (runList[r] >>> 32));
+                    int index = (int) runList[r];
+                    cursors[r - firstRun] = table.offsets[index];
+                    ends[r - firstRun] = table.offsets[index + 1];
+                }
+                int start = n;
+                while (true) {
+                    int min = -1;
+                    for (int r = 0; r < lastRun - firstRun; r++) {
+                        if (cursors[r] < ends[r]) {
+                            int value = tables.get((int) (runList[firstRun + r] >>> 32)).values[cursors[r]];
+                            if (min < 0 || value < values[n]) {
+                                min = r;
+                                values[n] = value;
+                            }
+                        }
+                    }
+                    if (min < 0) {
+                        break;
+                    }
+                    cursors[min]++;
+                    if (n == start || values[n] != values[n - 1]) {
+                        n++;
+                    }
+                }
+            }
+            offsets[g + 1] = n;
+        }
+        return new AnnotationTable(names, nameIndex, offsets, n == values.length ? values : Arrays.copyOf(values, n));
+    }
+
+    /**
+     * @param name name of an entity
+     * @return index of the name, -1 if the entity has no classifications
+     */
+    public int getNameIndex(String name) {
+        Integer index = nameIndex.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @param index index of a name
+     * @return the name
+     */
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return names of all entities in the order of their indices
+     */
+    public String[] getNames() {
+        return names.clone();
+    }
+
+    /**
+     * @param index index of a name
+     * @return number of classifications of the name
+     */
+    public int getNumberOfClassifications(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * @param index index of a name
+     * @param i index of classification, 0 ... {@link #getNumberOfClassifications(int)} - 1
+     * @return the classification
+     */
+    public int getClassification(int index, int i) {
+        return values[offsets[index] + i];
+    }
+
+    /**
+     * @param index index of a name
+     * @return read-only view of the classifications of the name in ascending order
+     */
+    public IntBuffer getClassificationsView(int index) {
+        return IntBuffer.wrap(values, offsets[index], offsets[index + 1] - offsets[index]).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @param name name of an entity
+     * @return read-only view of the classifications of the entity in ascending order, empty if it has none
+     */
+    public IntBuffer getClassificationsView(String name) {
+        int index = getNameIndex(name);
+        return index < 0 ? IntBuffer.wrap(NO_CLASSIFICATIONS).asReadOnlyBuffer() : getClassificationsView(index);
+    }
+
+    /**
+     * @param name name of an entity
+     * @return copy of the classifications of the entity in ascending order
+     */
+    public int[] getClassifications(String name) {
+        int index = getNameIndex(name);
+        return index < 0 ? new int[0] : Arrays.copyOfRange(values, offsets[index], offsets[index + 1]);
+    }
+
+    /**
+     * @return copy of classifications of all names, in the order of names
+     */
+    public int[] getClassifications() {
+        return values.clone();
+    }
+
+    /**
+     * @return number of names
+     */
+    public int count() {
+        return names.length;
+    }
+
+    /**
+     * @return number of classifications of all names
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * <p>Collects (name, classification) pairs. Pairs may repeat; duplicates are dropped when the table is
+     * built.</p>
+     */
+    public static final class Builder implements Serializable {
+
+        private final Map<String, Integer> nameIndex = new HashMap<>();
+
+        private String[] names = new String[64];
+
+        //name index in the high and classification in the low 32 bits
+        private long[] pairs = new long[256];
+
+        private int size;
+
+        /**
+         * <p>Empty builder</p>
+         */
+        public Builder() {
+        }
+
+        /**
+         * @param table table whose classifications the builder starts with
+         */
+        public Builder(AnnotationTable table) {
+            addAll(table);
+        }
+
+        /**
+         * @param name name of an entity
+         * @param classificationID a pointer into the ontology hierarchy
+         */
+        public void add(String name, int classificationID) {
+            int index = indexOf(name);
+            if (size == pairs.length) {
+                pairs = Arrays.copyOf(pairs, 2 * size);
+            }
+            //flipping the sign bit keeps negative ids in ascending order
+            pairs[size++] = ((long) index << 32) | ((classificationID ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+        }
+
+        /**
+         * <p>Adds all classifications of a table. Names new to the builder are added in the order of the
+         * table.</p>
+         * @param table classifications to add
+         */
+        public void addAll(AnnotationTable table) {
+            for (int index = 0; index < table.count(); index++) {
+                long name = (long) indexOf(table.names[index]) << 32;
+                int first = table.offsets[index];
+                int last = table.offsets[index + 1];
+                if (size + last - first > pairs.length) {
+                    pairs = Arrays.copyOf(pairs, Math.max(2 * pairs.length, size + last - first));
+                }
+                for (int i = first; i < last; i++) {
+                    pairs[size++] = name | ((table.values[i] ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+                }
+            }
+        }
+
+        /**
+         * @return index of a name; names not seen before get the next index
+         */
+        private int indexOf(String name) {
+            Integer index = nameIndex.get(name);
+            if (index == null) {
+                index = nameIndex.size();
+                if (index == names.length) {
+                    names = Arrays.copyOf(names, 2 * index);
+                }
+                names[index] = name;
+                nameIndex.put(name, index);
+            }
+            return index;
+        }
+
+        /**
+         * @return the table
+         */
+        public AnnotationTable build() {
+            long[] sorted = Arrays.copyOf(pairs, size);
+            Arrays.sort(sorted);
+            int count = nameIndex.size();
+            int[] offsets = new int[count + 1];
+            int[] values = new int[sorted.length];
+            int n = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i > 0 && sorted[i] == sorted[i - 1]) {
+                    continue;
+                }
+                offsets[(int) (sorted[i] >>> 32) + 1]++;
+                values[n++] = (int) sorted[i] ^ Integer.MIN_VALUE;
+            }
+            for (int k = 0; k < count; k++) {
+                offsets[k + 1] += offsets[k];
+            }
+            return new AnnotationTable(Arrays.copyOf(names, count), new HashMap<>(nameIndex), offsets,
+                    n == values.length ? values : Arrays.copyOf(values, n));
+        }
+    }
+}
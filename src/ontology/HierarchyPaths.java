@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ontology;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>Depths and paths of the terms of an {@link Ontology}. A path of a term starts at the term and follows parents
+ * and containers until a term without parents is reached; a parent that is not in the ontology ends the path at
+ * its child. The depth of a term is the number of terms on one of its paths.</p>
+ * <p>The smallest and largest depth and the number of paths of every term are computed once by dynamic programming
+ * over the topological order ({@link TopologicalOrder}): a term combines the memoized values of its parents. Paths
+ * themselves are not stored, because their number grows combinatorially with the depth of the hierarchy; they are
+ * enumerated lazily, one at a time, by {@link #iterator(int, int)}.</p>
+ *
+ * @version %I% %G%
+ */
+final class HierarchyPaths {
+
+    private final Ontology ontology;
+
+    //parents and containers of terms by dense index; -1 for parents that are not in the ontology
+    private final int[][] parents;
+
+    private final int[] minDepth;
+
+    private final int[] maxDepth;
+
+    //number of paths, Long.MAX_VALUE if there are more
+    private final long[] pathCount;
+
+    /**
+     * @param ontology ontology
+     * @param order dense indices of all terms of the ontology, parents before children
+     */
+    HierarchyPaths(Ontology ontology, int[] order) {
+        this.ontology = ontology;
+        int size = ontology.size();
+        parents = new int[size][];
+        minDepth = new int[size];
+        maxDepth = new int[size];
+        pathCount = new long[size];
+        for (int i : order) {
+            int[] ids = ontology.getTerm(ontology.getTermId(i)).getParentsAndContainers();
+            parents[i] = new int[ids.length];
+            if (ids.length == 0) {
+                minDepth[i] = 1;
+                maxDepth[i] = 1;
+                pathCount[i] = 1;
+                continue;
+            }
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            long count = 0;
+            for (int k = 0; k < ids.length; k++) {
+                int p = ontology.getTermIndex(ids[k]);
+                parents[i][k] = p;
+                min = Math.min(min, p < 0 ? 1 : minDepth[p] + 1);
+                max = Math.max(max, p < 0 ? 1 : maxDepth[p] + 1);
+                count = saturatedAdd(count, p < 0 ? 1 : pathCount[p]);
+            }
+            minDepth[i] = min;
+            maxDepth[i] = max;
+            pathCount[i] = count;
+        }
+    }
+
+    private static long saturatedAdd(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /**
+     * @param index dense index of a term
+     * @return number of terms on the shortest path of the term
+     */
+    int getMinDepth(int index) {
+        return minDepth[index];
+    }
+
+    /**
+     * @param index dense index of a term
+     * @return number of terms on the longest path of the term
+     */
+    int getMaxDepth(int index) {
+        return maxDepth[index];
+    }
+
+    /**
+     * @param index dense index of a term
+     * @return number of paths of the term, Long.MAX_VALUE if it does not fit into a long
+     */
+    long getPathCount(int index) {
+        return pathCount[index];
+    }
+
+    /**
+     * <p>Paths are enumerated depth first, parents in the order of
+     * {@link OntologyTerm#getParentsAndContainers()}. Every path is returned as ids with the most general term
+     * first and the term itself last.</p>
+     * @param index dense index of a term
+     * @param limit largest number of paths returned
+     * @return paths of the term
+     */
+    Iterator<int[]> iterator(int index, int limit) {
+        return new PathIterator(index, limit);
+    }
+
+    private final class PathIterator implements Iterator<int[]> {
+
+        //dense indices of terms of the current path, the term itself first
+        private final int[] path;
+
+        //next parent to follow of every term of the current path
+        private final int[] nextParent;
+
+        private int depth;
+
+        private int remaining;
+
+        private int[] next;
+
+        PathIterator(int index, int limit) {
+            path = new int[maxDepth[index]];
+            nextParent = new int[maxDepth[index]];
+            path[0] = index;
+            remaining = limit;
+            next = limit > 0 ? advance() : null;
+        }
+
+        //moves the search to the next end of a path; null if there is none
+        private int[] advance() {
+            while (depth >= 0) {
+                int term = path[depth];
+                int[] termParents = parents[term];
+                if (termParents.length == 0) {
+                    return complete(depth--);
+                }
+                if (nextParent[depth] == termParents.length) {
+                    nextParent[depth] = 0;
+                    depth--;
+                    continue;
+                }
+                int p = termParents[nextParent[depth]++];
+                if (p < 0) {
+                    return complete(depth);
+                }
+                depth++;
+                path[depth] = p;
+                nextParent[depth] = 0;
+            }
+            return null;
+        }
+
+        //ids of path[0 ... last], most general term first
+        private int[] complete(int last) {
+            int[] ids = new int[last + 1];
+            for (int k = 0; k <= last; k++) {
+                ids[k] = ontology.getTermId(path[last - k]);
+            }
+            return ids;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public int[] next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            int[] result = next;
+            next = --remaining > 0 ? advance() : null;
+            return result;
+        }
+    }
+}
@@ -38,8 +38,10 @@
 package ontology;
 
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Vector;
+import java.util.Iterator;
 
 /**
  * Contains a collection of OntologyTerms, each of which may have pointers to
@@ -51,13 +53,51 @@ import java.util.Vector;
  * methods are provided so that, for instance, the full leaf-to-root biological
  * process hierarchies which may exist for a given gene are conveniently
  * returned.
- *
+ * <p>
+ * Modified by Radoslav Davidović: terms have a dense index 0 ... size() - 1
+ * ({@link #getTermIndex(int)}, {@link #getTermId(int)}) so that counts per term
+ * can be kept in arrays instead of maps keyed by boxed ids.
+ * </p>
+ * <p>
+ * All ancestors (parents and containers, transitively) of every term are
+ * computed once, in topological order, and kept as sorted arrays of ids
+ * ({@link #getAncestors(int)}). The topological order they are built in
+ * is found by one linear pass, which also reports all cycles
+ * ({@link #getTopologicalOrder()}, {@link #getCycles()}).
+ * </p>
+ * <p>
+ * Depths of terms ({@link #getMinDepth(int)}, {@link #getMaxDepth(int)}) and
+ * numbers of paths are computed over the same order; paths are enumerated
+ * lazily ({@link #getHierarchyPaths(int, int)}) and nothing is printed.
+ * </p>
  */
 public class Ontology implements Serializable {
 
     protected String curator; // KEGG, GO, ...
     protected String ontologyType; // biological process, metabolic pathway, ...
     protected HashMap<Integer, OntologyTerm> termHash;
+    /**
+     * ids of terms in ascending order; the position of an id is its dense
+     * index. Built on first request and dropped when a term is added.
+     */
+    private transient volatile int[] termIds;
+    /**
+     * ancestors of terms by dense index, each sorted by id. Built on first
+     * request and dropped when a term is added.
+     */
+    private transient volatile int[][] ancestors;
+    /**
+     * topological order and cycles of terms. Built on first request and
+     * dropped when a term is added.
+     */
+    private transient volatile TopologicalOrder topologicalOrder;
+    /**
+     * depths and path counts of terms. Built on first request and dropped when
+     * a term is added.
+     */
+    private transient volatile HierarchyPaths hierarchyPaths;
+
+    private static final int[] NO_ANCESTORS = new int[0];
 
     /**
      * @param curator The institute or group which maintains this ontology
@@ -95,6 +135,10 @@ public class Ontology implements Serializable {
      */
     public void add(OntologyTerm newTerm) {
         termHash.put(newTerm.getId(), newTerm);
+        termIds = null;
+        ancestors = null;
+        topologicalOrder = null;
+        hierarchyPaths = null;
     } // add
 
     /**
@@ -137,6 +181,149 @@ public class Ontology implements Serializable {
         return termHash.get(id);
     }
 
+    /**
+     * @param id term id
+     * @return dense index of the term in range 0 ... size() - 1, or -1 if the
+     * term is not in the ontology. Terms are indexed in ascending order of ids
+     */
+    public int getTermIndex(int id) {
+        int index = Arrays.binarySearch(getTermIds(), id);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @param index dense index of a term
+     * @return id of the term
+     */
+    public int getTermId(int index) {
+        return getTermIds()[index];
+    }
+
+    //ids of terms in ascending order. Concurrent callers may build the array
+    //more than once, but they all build the same array
+    private int[] getTermIds() {
+        int[] ids = termIds;
+        if (ids == null) {
+            ids = new int[termHash.size()];
+            int i = 0;
+            for (Integer id : termHash.keySet()) {
+                ids[i++] = id;
+            }
+            Arrays.sort(ids);
+            termIds = ids;
+        }
+        return ids;
+    }
+
+    /**
+     * @param id term id
+     * @return ids of all parents and containers of the term, transitively, in
+     * ascending order; the term itself is not included. Parents that are not
+     * in the ontology are included but not followed. Empty if the term is not
+     * in the ontology. The array is shared and must not be modified
+     * @throws IllegalStateException if the ontology contains a cycle
+     */
+    public int[] getAncestors(int id) {
+        int index = getTermIndex(id);
+        return index < 0 ? NO_ANCESTORS : getAncestorClosure()[index];
+    }
+
+    /**
+     * @return ids of all terms, every term after all of its parents and
+     * containers
+     * @throws IllegalStateException if the ontology contains a cycle
+     */
+    public int[] getTopologicalOrder() {
+        int[] order = getAcyclicOrder().getOrder();
+        int[] ids = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            ids[i] = getTermId(order[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * @return ids of the terms of every cycle of parent and container
+     * relations, each in ascending order; empty if the ontology is a DAG
+     */
+    public int[][] getCycles() {
+        int[][] cycles = getTopological().getCycles();
+        int[][] copy = new int[cycles.length][];
+        for (int i = 0; i < cycles.length; i++) {
+            copy[i] = cycles[i].clone();
+        }
+        return copy;
+    }
+
+    //order of terms found by one linear pass. Concurrent callers may find it
+    //more than once
+    private TopologicalOrder getTopological() {
+        TopologicalOrder topological = topologicalOrder;
+        if (topological == null) {
+            topological = TopologicalOrder.of(this);
+            topologicalOrder = topological;
+        }
+        return topological;
+    }
+
+    //order of all terms; throws IllegalStateException if there are cycles
+    private TopologicalOrder getAcyclicOrder() {
+        TopologicalOrder topological = getTopological();
+        if (topological.getCycles().length != 0) {
+            throw new IllegalStateException("Ontology contains a cycle at ID "
+                    + topological.getCycles()[0][0]);
+        }
+        return topological;
+    }
+
+    //ancestors of all terms, built in topological order (parents before
+    //children) so every term merges the finished closures of its parents.
+    //Concurrent callers may build the closure more than once
+    private int[][] getAncestorClosure() {
+        int[][] closure = ancestors;
+        if (closure != null) {
+            return closure;
+        }
+        closure = new int[size()][];
+        for (int i : getAcyclicOrder().getOrder()) {
+            closure[i] = mergeAncestors(getTerm(getTermId(i)).getParentsAndContainers(), closure);
+        }
+        ancestors = closure;
+        return closure;
+    }
+
+    //parents and ancestors of parents, sorted and without duplicates
+    private int[] mergeAncestors(int[] parentIds, int[][] closure) {
+        if (parentIds.length == 0) {
+            return NO_ANCESTORS;
+        }
+        int size = parentIds.length;
+        for (int parent : parentIds) {
+            int p = getTermIndex(parent);
+            if (p >= 0) {
+                size += closure[p].length;
+            }
+        }
+        int[] merged = new int[size];
+        int n = 0;
+        for (int parent : parentIds) {
+            merged[n++] = parent;
+            int p = getTermIndex(parent);
+            if (p >= 0) {
+                System.arraycopy(closure[p], 0, merged, n, closure[p].length);
+                n += closure[p].length;
+            }
+        }
+        Arrays.sort(merged);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || merged[i] != merged[distinct - 1]) {
+                merged[distinct++] = merged[i];
+            }
+        }
+        return distinct == merged.length ? merged : Arrays.copyOf(merged, distinct);
+    }
+
     /**
      * get all unique paths from the termID to the root of the ontology, in
      * reverse order, with the most general classification first, and most
@@ -150,24 +337,77 @@ public class Ontology implements Serializable {
      * @return
      */
     public int[][] getAllHierarchyPaths(int termID) {
-        Vector flattenedList = getAllHierarchyPathsAsVector(termID);
-        int size = flattenedList.size();
-        int[][] result = new int[size][];
-
-        for (int i = 0; i < size; i++) {
-            Vector integerList = (Vector) flattenedList.get(i);
-            int max = integerList.size();
-            result[i] = new int[max];
-
-            for (int j = 0; j < max; j++) {
-                int indexForReversingOrder = max - j - 1;
-                result[i][j] = ((Integer) integerList.get(indexForReversingOrder));
-            }
-        } // for i
-
+        int index = getTermIndex(termID);
+        if (index < 0) {
+            return new int[0][];
+        }
+        long count = getHierarchyPaths().getPathCount(index);
+        if (count >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("Term " + termID + " has too many paths: " + count);
+        }
+        int[][] result = new int[(int) count][];
+        Iterator<int[]> paths = getHierarchyPaths().iterator(index, result.length);
+        for (int i = 0; i < result.length; i++) {
+            result[i] = paths.next();
+        }
         return result;
     } // getAllHierarchyPaths
 
+    /**
+     * paths from the roots of the ontology to the term, enumerated lazily in
+     * the order of {@link #getAllHierarchyPaths(int)}
+     *
+     * @param termID term id
+     * @param limit largest number of paths returned
+     * @return paths as ids, the most general term first
+     */
+    public Iterator<int[]> getHierarchyPaths(int termID, int limit) {
+        int index = getTermIndex(termID);
+        return index < 0 ? Collections.<int[]>emptyIterator() : getHierarchyPaths().iterator(index, limit);
+    }
+
+    /**
+     * @param termID term id
+     * @return number of paths from the roots to the term without enumerating
+     * them, Long.MAX_VALUE if it does not fit into a long; 0 if the term is not
+     * in the ontology
+     */
+    public long countHierarchyPaths(int termID) {
+        int index = getTermIndex(termID);
+        return index < 0 ? 0 : getHierarchyPaths().getPathCount(index);
+    }
+
+    /**
+     * @param termID term id
+     * @return number of terms on the shortest path from a root to the term, 0
+     * if the term is not in the ontology
+     */
+    public int getMinDepth(int termID) {
+        int index = getTermIndex(termID);
+        return index < 0 ? 0 : getHierarchyPaths().getMinDepth(index);
+    }
+
+    /**
+     * @param termID term id
+     * @return number of terms on the longest path from a root to the term, 0
+     * if the term is not in the ontology
+     */
+    public int getMaxDepth(int termID) {
+        int index = getTermIndex(termID);
+        return index < 0 ? 0 : getHierarchyPaths().getMaxDepth(index);
+    }
+
+    //depths and path counts of all terms. Concurrent callers may build them
+    //more than once
+    private HierarchyPaths getHierarchyPaths() {
+        HierarchyPaths paths = hierarchyPaths;
+        if (paths == null) {
+            paths = new HierarchyPaths(this, getAcyclicOrder().getOrder());
+            hierarchyPaths = paths;
+        }
+        return paths;
+    }
+
     /**
      * DOCUMENT ME!
      *
@@ -194,85 +434,6 @@ public class Ontology implements Serializable {
         return result;
     } // getAllHierarchyPathsAsNames
 
-    protected Vector getAllHierarchyPathsAsVector(int termID) {
-        Vector nestedLists = recursiveGetPath(termID, new Vector<>());
-
-        if (nestedLists.isEmpty()) {
-            return nestedLists;
-        }
-        System.out.println(nestedLists.toString());
-        FlattenIntVectors flattener = new FlattenIntVectors(nestedLists);
-        Vector flattenedList = flattener.getResult();
-        System.out.println("Flattened list: " + flattenedList.toString());
-        return flattenedList;
-    } // getAllHierarchyPathsAsVector
-
-    protected Vector recursiveGetPath(int termID, Vector<Integer> path) {
-        Integer ID = termID;
-
-        if ((termHash != null) && termHash.containsKey(ID)) {
-            OntologyTerm term = termHash.get(ID);
-            int parentCount = term.numberOfParentsAndContainers();
-            path.addElement(ID);
-
-            if (parentCount == 0) {
-                return path;
-            } else if (parentCount == 1) {
-                int parentID = term.getParentsAndContainers()[0];
-
-                return (recursiveGetPath(parentID, path));
-            } else { // assume for now: (parentCount == 2)
-
-                Vector newPath = new Vector();
-
-                for (int p = 0; p < parentCount; p++) {
-                    Vector<Integer> subPath = (Vector<Integer>) path.clone();
-                    int parent = term.getParentsAndContainers()[p];
-                    newPath.addElement(recursiveGetPath(parent, subPath));
-                } // for p
-
-                return newPath;
-            } // else: 2 or more parents
-        } // if ID is in termHas
-
-        return path;
-    } // recursiveGetPath
-
-    protected Vector oldRecursiveGetPath(int termID, Vector path) {
-        Integer ID = termID;
-
-        if ((termHash != null) && termHash.containsKey(ID)) {
-            OntologyTerm term = (OntologyTerm) termHash.get(ID);
-            int parentCount = term.numberOfParentsAndContainers();
-
-            if (parentCount == 0) {
-                path.addElement(ID);
-
-                return path;
-            } else if (parentCount == 1) {
-                path.addElement(ID);
-
-                int parentID = term.getParentsAndContainers()[0];
-
-                return (recursiveGetPath(parentID, path));
-            } else { // assume for now: (parentCount == 2)
-                path.addElement(ID);
-
-                Vector newPath = new Vector();
-                Vector path1 = (Vector) path.clone();
-                Vector path2 = (Vector) path.clone();
-                int parent1 = term.getParentsAndContainers()[0];
-                int parent2 = term.getParentsAndContainers()[1];
-                newPath.addElement(recursiveGetPath(parent1, path1));
-                newPath.addElement(recursiveGetPath(parent2, path2));
-
-                return newPath;
-            }
-        }
-
-        return path;
-    } // oldRecursiveGetPath
-
     /**
      * DOCUMENT ME!
      *
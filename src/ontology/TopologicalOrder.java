@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019.
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ontology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>Topological order of the terms of an {@link Ontology}: every term comes after all of its parents and
+ * containers. The order is found by one pass of Kahn's algorithm over the dense term indices, linear in the number
+ * of terms and relations.</p>
+ * <p>If some terms cannot be ordered the ontology is not a DAG. The terms that are left are searched once more for
+ * strongly connected components (Tarjan), and every component with more than one term, or a term that is its own
+ * parent, is reported as a cycle.</p>
+ *
+ * @version %I% %G%
+ */
+final class TopologicalOrder {
+
+    private static final int[][] NO_CYCLES = new int[0][];
+
+    //dense indices of terms, parents first; only the ordered terms if there are cycles
+    private final int[] order;
+
+    //ids of terms of every cycle in ascending order, cycles ordered by their smallest id
+    private final int[][] cycles;
+
+    private TopologicalOrder(int[] order, int[][] cycles) {
+        this.order = order;
+        this.cycles = cycles;
+    }
+
+    /**
+     * @param ontology ontology
+     * @return order of terms of the ontology
+     */
+    static TopologicalOrder of(Ontology ontology) {
+        int size = ontology.size();
+        //dense indices of parents that are in the ontology
+        int[][] parents = new int[size][];
+        int[] childCounts = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            int[] ids = ontology.getTerm(ontology.getTermId(i)).getParentsAndContainers();
+            int[] indices = new int[ids.length];
+            int n = 0;
+            for (int id : ids) {
+                int p = ontology.getTermIndex(id);
+                if (p >= 0) {
+                    indices[n++] = p;
+                    childCounts[p + 1]++;
+                }
+            }
+            parents[i] = n == indices.length ? indices : Arrays.copyOf(indices, n);
+        }
+        for (int i = 0; i < size; i++) {
+            childCounts[i + 1] += childCounts[i];
+        }
+        int[] children = new int[childCounts[size]];
+        int[] next = Arrays.copyOf(childCounts, size);
+        //parents of a term whose place is not known yet
+        int[] pending = new int[size];
+        for (int i = 0; i < size; i++) {
+            pending[i] = parents[i].length;
+            for (int p : parents[i]) {
+                children[next[p]++] = i;
+            }
+        }
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            if (pending[i] == 0) {
+                queue[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            int i = queue[head++];
+            for (int c = childCounts[i]; c < childCounts[i + 1]; c++) {
+                if (--pending[children[c]] == 0) {
+                    queue[tail++] = children[c];
+                }
+            }
+        }
+        if (tail == size) {
+            return new TopologicalOrder(queue, NO_CYCLES);
+        }
+        return new TopologicalOrder(Arrays.copyOf(queue, tail), findCycles(ontology, parents, pending));
+    }
+
+    //iterative Tarjan over terms that were not ordered (pending[i] > 0), following relations to parents
+    private static int[][] findCycles(Ontology ontology, int[][] parents, int[] pending) {
+        int size = parents.length;
+        int[] number = new int[size];
+        int[] low = new int[size];
+        boolean[] onStack = new boolean[size];
+        int[] stack = new int[size];
+        int stackSize = 0;
+        //depth first search: term and position in its parents
+        int[] callTerm = new int[size];
+        int[] callParent = new int[size];
+        int counter = 0;
+        List<int[]> cycles = new ArrayList<>();
+        for (int root = 0; root < size; root++) {
+            if (pending[root] == 0 || number[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            callTerm[0] = root;
+            callParent[0] = 0;
+            number[root] = low[root] = ++counter;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                int term = callTerm[depth];
+                if (callParent[depth] < parents[term].length) {
+                    int p = parents[term][callParent[depth]++];
+                    if (pending[p] == 0) {
+                        //ordered terms are not on any cycle
+                        continue;
+                    }
+                    if (number[p] == 0) {
+                        number[p] = low[p] = ++counter;
+                        stack[stackSize++] = p;
+                        onStack[p] = true;
+                        depth++;
+                        callTerm[depth] = p;
+                        callParent[depth] = 0;
+                    } else if (onStack[p]) {
+                        low[term] = Math.min(low[term], number[p]);
+                    }
+                    continue;
+                }
+                if (low[term] == number[term]) {
+                    int start = stackSize;
+                    do {
+                        start--;
+                        onStack[stack[start]] = false;
+                    } while (stack[start] != term);
+                    int[] component = Arrays.copyOfRange(stack, start, stackSize);
+                    stackSize = start;
+                    if (component.length > 1 || isOwnParent(parents, term)) {
+                        for (int k = 0; k < component.length; k++) {
+                            component[k] = ontology.getTermId(component[k]);
+                        }
+                        Arrays.sort(component);
+                        cycles.add(component);
+                    }
+                }
+                depth--;
+                if (depth >= 0) {
+                    int caller = callTerm[depth];
+                    low[caller] = Math.min(low[caller], low[term]);
+                }
+            }
+        }
+        cycles.sort((a, b) -> Integer.compare(a[0], b[0]));
+        return cycles.toArray(new int[0][]);
+    }
+
+    private static boolean isOwnParent(int[][] parents, int term) {
+        for (int p : parents[term]) {
+            if (p == term) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return dense indices of terms, parents before children. Incomplete if there are cycles
+     */
+    int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * @return ids of terms of every cycle, empty if the ontology is a DAG
+     */
+    int[][] getCycles() {
+        return cycles;
+    }
+}
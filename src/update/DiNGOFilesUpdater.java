@@ -143,13 +143,6 @@ public final class DiNGOFilesUpdater {
         System.out.println("Downloading " + fileName + " from " + link);
         fileDownloader = new GOFileDownloader(fileAddress, downloadFolder);
 
-        //if file is gzipped remove gz extension from file name
-        if (fileName.endsWith(".gz")) {
-
-            fileName = fileName.substring(0, fileName.lastIndexOf("."));
-
-        }
-
         ProgressBar pBar = new ProgressBar();
         pBar.start();
 
@@ -18,6 +18,9 @@ package update;
 
 import java.io.*;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -51,21 +54,41 @@ public class GOFileDownloader implements IFileDownload {
      * <p>Implementation of {@link IFileDownload} method</p>
      * <p>Downloads OBO (ontology file) or GAF(annotation file) depending on file extension. If the extension is .obo, ontology
      * file wil be downloaded, otherwise an annotation file</p>
+     * <p>The file is stored as it is served; gzipped annotation files are not decompressed. Format version and
+     * release date are read from the header of the stored file</p>
      * @param fileName name of downloaded file
      */
     @Override
     public void downloadFile(String fileName){
-        InputStream inStream;
+        String localFile = downloadFolder + fileName;
+        try (InputStream inStream = new URL(fileAddress).openStream()) {
+            Files.copy(inStream, Paths.get(localFile), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logger.getLogger(GOFileDownloader.class.getName()).log(Level.SEVERE, "File can not be found " + fileAddress, "");
+            return;
+        }
+        readHeader(localFile);
+    }
+
+    /**
+     * <p>Reads format version and release date from the header of a downloaded file. Reading stops at the first
+     * stanza of an OBO file or at the first annotation of a GAF file</p>
+     * @param localFile path to downloaded file
+     */
+    private void readHeader(String localFile){
+        boolean isObo = localFile.endsWith(".obo");
         BufferedReader reader = null;
-        BufferedWriter writer = null;
         try {
-            inStream = fileName.endsWith(".obo") ? new URL(fileAddress).openStream() : new GZIPInputStream(new URL(fileAddress).openStream());
+            InputStream inStream = localFile.endsWith(".gz") ? new GZIPInputStream(new FileInputStream(localFile))
+                    : new FileInputStream(localFile);
             reader = new BufferedReader(new InputStreamReader(inStream));
-            writer = new BufferedWriter(new FileWriter(downloadFolder + fileName));
 
             String line;
             while((line = reader.readLine()) != null){
-                
+                if(isObo ? line.startsWith("[") : !line.isEmpty() && !line.startsWith("!")){
+                    break;
+                }
+
                 if(line.startsWith("!gaf-version:") || line.startsWith("format-version")){
                     formatVersion = line.split("\\s")[1];
                 }
@@ -86,12 +109,9 @@ public class GOFileDownloader implements IFileDownload {
                         Logger.getLogger(GOFileDownloader.class.getName()).log(Level.INFO, "Unparsable date " + strRelease, "");
                     }
                 }
-
-                writer.write(line);
-                writer.newLine();
             }
         } catch (IOException e) {
-            Logger.getLogger(GOFileDownloader.class.getName()).log(Level.SEVERE, "File can not be found " + fileAddress, "");
+            Logger.getLogger(GOFileDownloader.class.getName()).log(Level.SEVERE, "File can not be read " + localFile, "");
         }
         finally{
             if(reader != null){
@@ -101,13 +121,6 @@ public class GOFileDownloader implements IFileDownload {
                     System.out.println(ex.getMessage());
                 }
             }
-            if(writer != null){
-                try{
-                    writer.close();
-                }catch(IOException ex){
-                    System.out.println(ex.getMessage());
-                }
-            }
         }
     }
 
@@ -6,6 +6,7 @@ import java.util.Date;
 import java.util.List;
 import java.text.SimpleDateFormat;
 import java.text.ParseException;
+import java.util.zip.GZIPInputStream;
 
 /**
  * <p>Class containing methods for retrieving info about DiNGO's local files</p>
@@ -41,13 +42,16 @@ public class LocalFilesManager{
     }
 
     /**
-     * <p>Method extracts release date of ontology obo file from the file header</p>
+     * <p>Method extracts release date of ontology obo file from the file header. Gzipped files are
+     * decompressed while reading</p>
      * @param pathToObo path to obo file
      * @return date of release
      */
     public static Date extractOboReleaseDate(String pathToObo){
         String timeStr = "";
-        try(BufferedReader reader = new BufferedReader(new FileReader(pathToObo))){
+        try(BufferedReader reader = pathToObo.endsWith(".gz")
+                ? new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(pathToObo))))
+                : new BufferedReader(new FileReader(pathToObo))){
             String line;
 
             while((line = reader.readLine()) != null){